@@ -0,0 +1,15 @@
+#!/bin/bash
+# Logs the time from JVM start to the first query of My2chMain, with only the default CDS archive of the JDK, and with the
+# AppCDS archive recorded by the appcds profile of my2ch-cli
+set -e
+DIR="$( cd "$( dirname "${BASH_SOURCE[0]}" )" >/dev/null 2>&1 && pwd )"
+TARGET="$DIR/../my2ch-cli/target"
+CONFIGS="${1:?Usage: measure-start.sh <home> [runs]}"
+RUNS="${2:-5}"
+
+for ARCHIVE in "-Xshare:auto" "-XX:SharedArchiveFile=$TARGET/my2ch.jsa"; do
+  echo "$ARCHIVE"
+  for RUN in $(seq "$RUNS"); do
+    java "$ARCHIVE" -cp "$TARGET/lib/*" com.ethlo.my2ch.My2chMain --home="$CONFIGS" | grep "First query after"
+  done
+done
@@ -0,0 +1,74 @@
+package com.ethlo.my2ch.benchmark;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.ethlo.my2ch.clickhouse.RowBinaryBuffer;
+import com.ethlo.my2ch.clickhouse.RowBinaryEncoder;
+
+/**
+ * Encodes one block of typical rows, as done by the streaming transfer engine
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RowBinaryEncoderBenchmark
+{
+    private static final int BLOCK_ROWS = 1024;
+
+    private RowBinaryEncoder encoder;
+    private RowBinaryBuffer buffer;
+    private Object[][] rows;
+
+    @Setup
+    public void setup()
+    {
+        encoder = new RowBinaryEncoder(Arrays.asList(
+                "UInt32", "Int64", "Nullable(String)", "LowCardinality(String)", "Date", "DateTime", "Decimal(12,2)", "Float64"
+        ), ZoneOffset.UTC);
+        buffer = new RowBinaryBuffer(1024 * 1024);
+        rows = new Object[BLOCK_ROWS][];
+        for (int i = 0; i < BLOCK_ROWS; i++)
+        {
+            rows[i] = new Object[]{
+                    (long) i,
+                    i * 1_000_003L,
+                    i % 10 == 0 ? null : "name-" + i,
+                    "category-" + (i % 8),
+                    LocalDate.of(2020, 1, 1).plusDays(i),
+                    LocalDateTime.of(2020, 1, 1, 0, 0).plusSeconds(i * 37L),
+                    BigDecimal.valueOf(i * 101L, 2),
+                    i / 3D
+            };
+        }
+    }
+
+    @Benchmark
+    public int encodeBlock()
+    {
+        buffer.reset();
+        for (final Object[] row : rows)
+        {
+            encoder.encode(row, buffer);
+        }
+        return buffer.size();
+    }
+}
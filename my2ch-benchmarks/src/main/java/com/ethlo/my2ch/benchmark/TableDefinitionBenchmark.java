@@ -0,0 +1,52 @@
+package com.ethlo.my2ch.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.ethlo.my2ch.ClickHouseTableDefinition;
+import com.ethlo.my2ch.SourceColumn;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TableDefinitionBenchmark
+{
+    private static final String[] TYPES = {"int(11)", "bigint(20) unsigned", "varchar(64)", "datetime", "decimal(10,2)", "date", "text", "tinyint(1)"};
+
+    @Param({"10", "100"})
+    public int columnCount;
+
+    private List<SourceColumn> columns;
+
+    @Setup
+    public void setup()
+    {
+        columns = new ArrayList<>(columnCount);
+        for (int i = 0; i < columnCount; i++)
+        {
+            columns.add(new SourceColumn("column_" + i, TYPES[i % TYPES.length], i % 3 == 0));
+        }
+    }
+
+    @Benchmark
+    public String create()
+    {
+        return ClickHouseTableDefinition.create("default.tmp_benchmark", columns, "ENGINE = MergeTree ORDER BY column_0");
+    }
+}
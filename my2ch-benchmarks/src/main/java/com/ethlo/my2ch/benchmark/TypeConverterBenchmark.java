@@ -0,0 +1,34 @@
+package com.ethlo.my2ch.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.ethlo.my2ch.ClickHouseTypeDefinitionConverter;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TypeConverterBenchmark
+{
+    @Param({"int(10) unsigned", "bigint", "varchar(255)", "datetime(3)", "decimal(12,4)", "enum('a','b')"})
+    public String mysqlType;
+
+    @Benchmark
+    public String fromMysqlType()
+    {
+        return ClickHouseTypeDefinitionConverter.fromMysqlType(mysqlType, true);
+    }
+}
@@ -1,16 +1,33 @@
 package com.ethlo.my2ch;
 
+import java.time.Duration;
+
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
+import com.ethlo.my2ch.scheduler.FairScheduler;
 import com.ethlo.my2ch.scheduler.My2chTaskRunner;
+import com.zaxxer.hikari.metrics.micrometer.MicrometerMetricsTrackerFactory;
+import io.micrometer.core.instrument.MeterRegistry;
 
 @Configuration
 public class My2chCfg
 {
+    @Bean(destroyMethod = "close")
+    public ConnectionRegistry connectionRegistry(@Value("${my2ch.connections.max-pool-size:#{null}}") final Integer maxPoolSize,
+                                                 @Value("${my2ch.connections.connection-timeout:#{null}}") final Duration connectionTimeout,
+                                                 final MeterRegistry meterRegistry)
+    {
+        return new ConnectionRegistry(maxPoolSize, connectionTimeout, new MicrometerMetricsTrackerFactory(meterRegistry));
+    }
+
     @Bean(destroyMethod = "shutdown")
-    public My2chTaskRunner scheduler()
+    public My2chTaskRunner scheduler(final ConnectionRegistry connectionRegistry, final TransferObserver transferObserver,
+                                     @Value("${my2ch.scheduler.slots:1}") final int slots,
+                                     @Value("${my2ch.scheduler.max-per-host:1}") final int maxPerHost,
+                                     @Value("${my2ch.scheduler.max-per-cluster:1}") final int maxPerCluster)
     {
-        return new My2chTaskRunner(1);
+        return new My2chTaskRunner(1, new FairScheduler(slots, maxPerHost, maxPerCluster), connectionRegistry, transferObserver);
     }
 }
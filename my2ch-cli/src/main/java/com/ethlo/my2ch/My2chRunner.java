@@ -13,12 +13,14 @@ import picocli.CommandLine;
 public class My2chRunner implements CommandLineRunner, ExitCodeGenerator
 {
     private final TransferCommand transferCommand;
+    private final ReconcileCommand reconcileCommand;
 
     private int exitCode;
 
-    public My2chRunner(final TransferCommand transferCommand)
+    public My2chRunner(final TransferCommand transferCommand, final ReconcileCommand reconcileCommand)
     {
         this.transferCommand = transferCommand;
+        this.reconcileCommand = reconcileCommand;
     }
 
     public static void main(String[] args)
@@ -30,7 +32,9 @@ public class My2chRunner implements CommandLineRunner, ExitCodeGenerator
     @Override
     public void run(String... args)
     {
-        exitCode = new CommandLine(transferCommand).execute(args);
+        exitCode = new CommandLine(transferCommand)
+                .addSubcommand("reconcile", reconcileCommand)
+                .execute(args);
     }
 
     @Override
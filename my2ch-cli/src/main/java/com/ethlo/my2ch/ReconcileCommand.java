@@ -0,0 +1,62 @@
+package com.ethlo.my2ch;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import com.ethlo.my2ch.config.TransferConfig;
+import picocli.CommandLine;
+
+@Component
+@CommandLine.Command(name = "reconcile", description = "Compare the MySQL source and the ClickHouse table of each task, and transfer differing ranges again")
+public class ReconcileCommand implements Callable<Long>
+{
+    private static final Logger logger = LoggerFactory.getLogger(ReconcileCommand.class);
+
+    private final ConnectionRegistry connectionRegistry;
+
+    @CommandLine.ParentCommand
+    private TransferCommand parent;
+
+    @CommandLine.Option(names = "--full", description = "Run passes until the whole key space is compared, instead of a single bounded pass")
+    private boolean full;
+
+    public ReconcileCommand(final ConnectionRegistry connectionRegistry)
+    {
+        this.connectionRegistry = connectionRegistry;
+    }
+
+    @Override
+    public Long call()
+    {
+        final List<Path> directories = My2chConfigLoader.getConfigDirectories(parent.getHome(), parent.getNames());
+        long repairedRows = 0;
+        for (final Path directory : directories)
+        {
+            final Path transferFile = directory.resolve("transfer.yml");
+            if (!Files.isRegularFile(transferFile))
+            {
+                continue;
+            }
+
+            final TransferConfig config = My2chConfigLoader.loadConfig(transferFile, TransferConfig.class);
+            try (final My2ch my2ch = new My2ch(config, connectionRegistry))
+            {
+                ReconcileResult result;
+                do
+                {
+                    result = my2ch.reconcile();
+                    repairedRows += result.getRepairedRows();
+                }
+                while (full && !result.isComplete());
+            }
+        }
+        logger.info("Reconciled {} tasks, transferring {} rows again", directories.size(), repairedRows);
+        return repairedRows;
+    }
+}
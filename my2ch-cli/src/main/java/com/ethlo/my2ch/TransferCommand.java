@@ -2,15 +2,28 @@ package com.ethlo.my2ch;
 
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
 import org.springframework.stereotype.Component;
 
+import com.ethlo.my2ch.cdc.BinlogChangeCapture;
 import com.ethlo.my2ch.config.LifeCycle;
+import com.ethlo.my2ch.config.MysqlConfig;
 import com.ethlo.my2ch.config.TransferConfig;
 import com.ethlo.my2ch.scheduler.My2chTaskRunner;
 import picocli.CommandLine;
@@ -23,6 +36,7 @@ public class TransferCommand implements Callable<Long>
 
     private final My2chTaskRunner taskRunner;
     private final DdlManager ddlManager;
+    private final ConnectionRegistry connectionRegistry;
 
     @CommandLine.Option(names = "--names", description = "The name of config(s) to run. Undefined runs all")
     private List<String> names;
@@ -33,10 +47,17 @@ public class TransferCommand implements Callable<Long>
     @CommandLine.Option(names = "--service", description = "Run as background-service")
     private Boolean service;
 
-    public TransferCommand(My2chTaskRunner taskRunner, final DdlManager ddlManager)
+    @CommandLine.Option(names = "--startup-concurrency", description = "The number of tasks to run the initial transfer for concurrently", defaultValue = "1")
+    private int startupConcurrency;
+
+    @CommandLine.Option(names = "--per-host-concurrency", description = "The maximum number of initial transfers reading from the same MySQL server at a time. Undefined means no limit")
+    private Integer perHostConcurrency;
+
+    public TransferCommand(My2chTaskRunner taskRunner, final DdlManager ddlManager, final ConnectionRegistry connectionRegistry)
     {
         this.taskRunner = taskRunner;
         this.ddlManager = ddlManager;
+        this.connectionRegistry = connectionRegistry;
     }
 
     public Long call() throws InterruptedException
@@ -45,38 +66,155 @@ public class TransferCommand implements Callable<Long>
 
         final List<Path> directories = My2chConfigLoader.getConfigDirectories(home, names);
         logger.info("Found {} tasks in {}", directories.size(), home);
-        long total = 0;
-        int count = 0;
-        for (final Path directory : directories)
+
+        final int concurrency = Math.max(1, Math.min(startupConcurrency, directories.size()));
+        final ExecutorService executor = Executors.newFixedThreadPool(concurrency, new CustomizableThreadFactory("my2ch-startup-"));
+        final Map<String, Semaphore> hostPermits = new ConcurrentHashMap<>();
+        final OffsetDateTime started = OffsetDateTime.now();
+        final Map<Path, Future<Long>> results = new LinkedHashMap<>();
+        try
         {
-            final Path transferFile = directory.resolve("transfer.yml");
+            for (final Path directory : directories)
+            {
+                results.put(directory, executor.submit(() -> startTask(directory, schedule, hostPermits)));
+            }
+
+            long total = 0;
+            int count = 0;
+            int failed = 0;
+            Exception firstFailure = null;
+            for (final Map.Entry<Path, Future<Long>> result : results.entrySet())
+            {
+                try
+                {
+                    final long rows = result.getValue().get();
+                    if (rows >= 0)
+                    {
+                        total += rows;
+                        count++;
+                    }
+                }
+                catch (ExecutionException exc)
+                {
+                    logger.error("Task in {} failed: {}", result.getKey(), exc.getCause().getMessage(), exc.getCause());
+                    firstFailure = firstFailure != null ? firstFailure : exc;
+                    failed++;
+                }
+            }
+
+            executor.shutdown();
 
-            if (Files.exists(transferFile) && Files.isRegularFile(transferFile))
+            logger.info("Completed {} tasks with a total of {} copied rows in {} ({} failed)", count, format(total), Duration.between(started, OffsetDateTime.now()), failed);
+            if (firstFailure != null)
             {
-                ddlManager.run(directory, LifeCycle.BEFORE);
+                final Throwable cause = firstFailure.getCause();
+                throw cause instanceof RuntimeException ? (RuntimeException) cause : new IllegalStateException(cause);
+            }
+
+            if (schedule)
+            {
+                final CountDownLatch latch = new CountDownLatch(1);
+                latch.await();
+            }
+
+            return total;
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Runs the BEFORE migrations, the initial transfer and the AFTER migrations of one task, and schedules it if running as a service
+     *
+     * @return The number of rows transferred, or -1 if the directory does not contain a task
+     */
+    private long startTask(final Path directory, final boolean schedule, final Map<String, Semaphore> hostPermits) throws InterruptedException
+    {
+        final Path transferFile = directory.resolve("transfer.yml");
+        if (!Files.exists(transferFile) || !Files.isRegularFile(transferFile))
+        {
+            return -1;
+        }
 
-                final TransferConfig config = My2chConfigLoader.loadConfig(transferFile, TransferConfig.class);
-                total += taskRunner.runTask(new My2ch(config)).getRows();
+        final TransferConfig config = My2chConfigLoader.loadConfig(transferFile, TransferConfig.class);
+        final MysqlConfig mysqlConfig = config.getSource().getMysql();
+        final Semaphore permits = perHostConcurrency != null
+                ? hostPermits.computeIfAbsent(mysqlConfig.getHost() + ":" + mysqlConfig.getPort(), host -> new Semaphore(perHostConcurrency))
+                : null;
+        if (permits != null)
+        {
+            permits.acquire();
+        }
+
+        try
+        {
+            ddlManager.run(directory, LifeCycle.BEFORE);
+
+            final long rows;
+            final My2ch my2ch = new My2ch(config, connectionRegistry);
+            BinlogChangeCapture changeCapture = null;
+            boolean handedOver = false;
+            try
+            {
+                changeCapture = schedule && config.getSource().getCdc() != null ? my2ch.createChangeCapture() : null;
+                if (changeCapture != null)
+                {
+                    // Pin the binlog position before the snapshot, so changes made during it are replayed afterwards
+                    changeCapture.bootstrap();
+                }
+                rows = taskRunner.runTask(my2ch).getRows();
 
                 ddlManager.run(directory, LifeCycle.AFTER);
 
+                if (changeCapture != null)
+                {
+                    taskRunner.startChangeCapture(config, changeCapture);
+                    handedOver = true;
+                }
+                else if (schedule)
+                {
+                    taskRunner.schedule(config);
+                }
+
                 if (schedule)
                 {
-                    taskRunner.runAtInterval(config);
+                    taskRunner.reconcileAtInterval(config);
+                    taskRunner.syncDeletesAtInterval(config);
                 }
-                count++;
             }
+            finally
+            {
+                // A started change capture keeps using the connections of this instance, while scheduled runs get their own
+                if (!handedOver)
+                {
+                    if (changeCapture != null)
+                    {
+                        changeCapture.close();
+                    }
+                    my2ch.close();
+                }
+            }
+            return rows;
         }
-
-        logger.info("Completed {} tasks with a total of {} copied rows", count, format(total));
-
-        if (schedule)
+        finally
         {
-            final CountDownLatch latch = new CountDownLatch(1);
-            latch.await();
+            if (permits != null)
+            {
+                permits.release();
+            }
         }
+    }
+
+    public Path getHome()
+    {
+        return home;
+    }
 
-        return total;
+    public List<String> getNames()
+    {
+        return names;
     }
 
     private String format(long l)
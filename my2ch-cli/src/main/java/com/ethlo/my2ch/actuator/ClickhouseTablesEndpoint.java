@@ -1,61 +1,161 @@
 package com.ethlo.my2ch.actuator;
 
+import java.time.Duration;
 import java.util.Collections;
 import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.StringJoiner;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
 import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
 import org.springframework.stereotype.Component;
 
 import com.ethlo.clackshack.ClackShack;
-import com.ethlo.clackshack.ClackShackImpl;
-import com.ethlo.clackshack.model.ResultSet;
+import com.ethlo.my2ch.ConnectionRegistry;
+import com.ethlo.my2ch.TransferStatistics;
 import com.ethlo.my2ch.config.ClickHouseConfig;
 import com.ethlo.my2ch.config.TransferConfig;
 import com.ethlo.my2ch.scheduler.My2chTaskRunner;
+import com.ethlo.my2ch.scheduler.TaskStatusListener;
 
+/**
+ * Reports the size of the ClickHouse table of each task. Sizes are fetched with one query per ClickHouse server,
+ * and cached for the configured time-to-live or until a transfer finishes.
+ */
 @Component
 @Endpoint(id = "clickhouse")
-public class ClickhouseTablesEndpoint
+public class ClickhouseTablesEndpoint implements TaskStatusListener
 {
+    private static final Logger logger = LoggerFactory.getLogger(ClickhouseTablesEndpoint.class);
+
     private final My2chTaskRunner taskRunner;
+    private final ConnectionRegistry connectionRegistry;
+    private final Duration ttl;
+    private final ScheduledExecutorService refresher;
+
+    private volatile List<Map<String, Object>> cached;
+    private volatile long cachedAt;
 
-    public ClickhouseTablesEndpoint(final My2chTaskRunner taskRunner)
+    public ClickhouseTablesEndpoint(final My2chTaskRunner taskRunner, final ConnectionRegistry connectionRegistry, @Value("${my2ch.actuator.clickhouse.ttl:PT30S}") final Duration ttl)
     {
         this.taskRunner = taskRunner;
+        this.connectionRegistry = connectionRegistry;
+        this.ttl = ttl;
+        this.refresher = Executors.newSingleThreadScheduledExecutor(new CustomizableThreadFactory("my2ch-clickhouse-stats-"));
+        refresher.scheduleWithFixedDelay(this::refresh, ttl.toMillis(), ttl.toMillis(), TimeUnit.MILLISECONDS);
+        taskRunner.addListener(this);
     }
 
     @ReadOperation()
     public List<Map<String, Object>> size()
     {
+        final List<Map<String, Object>> result = cached;
+        if (result != null && cachedAt != 0 && System.nanoTime() - cachedAt < ttl.toNanos())
+        {
+            return result;
+        }
+        return load();
+    }
+
+    private void refresh()
+    {
+        try
+        {
+            // Only keep the sizes fresh once they have been asked for
+            if (cached != null)
+            {
+                load();
+            }
+        }
+        catch (RuntimeException exc)
+        {
+            logger.warn("Unable to refresh ClickHouse table sizes: {}", exc.getMessage());
+        }
+    }
+
+    private synchronized List<Map<String, Object>> load()
+    {
+        // Group the tables by server, so each server is queried once
+        final Map<String, List<Map.Entry<String, TransferConfig>>> tasksByUrl = new LinkedHashMap<>();
+        for (final Map.Entry<String, TransferConfig> entry : taskRunner.getTasks().entrySet())
+        {
+            tasksByUrl.computeIfAbsent(entry.getValue().getTarget().getClickhouse().getUrl(), url -> new LinkedList<>()).add(entry);
+        }
+
+        final Map<String, Long> sizes = new LinkedHashMap<>();
+        for (final Map.Entry<String, List<Map.Entry<String, TransferConfig>>> server : tasksByUrl.entrySet())
+        {
+            final StringJoiner tables = new StringJoiner(", ");
+            for (final Map.Entry<String, TransferConfig> task : server.getValue())
+            {
+                tables.add("(" + quote(task.getValue().getTarget().getClickhouse().getDb()) + ", " + quote(task.getKey()) + ")");
+            }
+
+            try (final ConnectionRegistry.Lease<ClackShack> clackShack = connectionRegistry.clackShack(server.getKey()))
+            {
+                clackShack.get().query(
+                                "SELECT database, table, sum(bytes_on_disk) AS bytes\n" +
+                                        "FROM system.parts\n" +
+                                        "WHERE active AND (database, table) IN (" + tables + ")\n" +
+                                        "GROUP BY database, table")
+                        .asMap()
+                        .forEach(row -> sizes.put(row.get("database") + "." + row.get("table"), ((Number) row.get("bytes")).longValue()));
+            }
+        }
+
         final List<Map<String, Object>> results = new LinkedList<>();
-        final Map<String, TransferConfig> tasks = taskRunner.getTasks();
-        for (final Map.Entry<String, TransferConfig> entry : tasks.entrySet())
+        for (final List<Map.Entry<String, TransferConfig>> tasks : tasksByUrl.values())
         {
-            final String name = entry.getKey();
-            final TransferConfig task = entry.getValue();
-            final ClickHouseConfig clickhouseCfg = task.getTarget().getClickhouse();
-            final ClackShack clackShack = new ClackShackImpl(clickhouseCfg.getUrl());
-
-            final Map<String, Object> params = new LinkedHashMap<>();
-            params.put("db", clickhouseCfg.getDb());
-            params.put("table", name);
-
-            final ResultSet result = clackShack.query(
-                    "SELECT bytes\n" +
-                            "FROM system.parts\n" +
-                            "WHERE database = :db " +
-                            "AND table = :table", params);
-            final long size = result.isEmpty() ? 0 : result
-                    .getRow(0)
-                    .get("bytes", Number.class)
-                    .longValue();
-
-            results.add(Collections.singletonMap(name, Collections.singletonMap("size", size)));
+            for (final Map.Entry<String, TransferConfig> task : tasks)
+            {
+                final ClickHouseConfig clickhouseCfg = task.getValue().getTarget().getClickhouse();
+                final long size = sizes.getOrDefault(clickhouseCfg.getDb() + "." + task.getKey(), 0L);
+                results.add(Collections.singletonMap(task.getKey(), Collections.singletonMap("size", size)));
+            }
         }
+
+        this.cached = results;
+        this.cachedAt = System.nanoTime();
         return results;
     }
+
+    private static String quote(final String value)
+    {
+        return "'" + value.replace("\\", "\\\\").replace("'", "\\'") + "'";
+    }
+
+    private void invalidate()
+    {
+        // Reloaded by the next request or background refresh, so a burst of finished transfers costs a single query
+        this.cachedAt = 0;
+    }
+
+    @Override
+    public void finishedSuccess(final String task, final TransferStatistics transferStatistics)
+    {
+        invalidate();
+    }
+
+    @Override
+    public void finishedError(final String task, final Exception exception)
+    {
+        invalidate();
+    }
+
+    @PreDestroy
+    public void shutdown()
+    {
+        refresher.shutdownNow();
+    }
 }
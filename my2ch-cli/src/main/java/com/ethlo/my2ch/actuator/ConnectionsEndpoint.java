@@ -0,0 +1,28 @@
+package com.ethlo.my2ch.actuator;
+
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.stereotype.Component;
+
+import com.ethlo.my2ch.ConnectionRegistry;
+
+@Component
+@Endpoint(id = "connections")
+public class ConnectionsEndpoint
+{
+    private final ConnectionRegistry connectionRegistry;
+
+    public ConnectionsEndpoint(final ConnectionRegistry connectionRegistry)
+    {
+        this.connectionRegistry = connectionRegistry;
+    }
+
+    @ReadOperation
+    public List<Map<String, Object>> connections()
+    {
+        return connectionRegistry.getStats();
+    }
+}
@@ -0,0 +1,158 @@
+package com.ethlo.my2ch.actuator;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeParseException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.stereotype.Component;
+
+import com.ethlo.my2ch.TransferObserver;
+import com.ethlo.my2ch.TransferPhase;
+import com.ethlo.my2ch.TransferProgress;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Publishes the progress and outcome of transfers as Micrometer metrics, tagged by alias
+ */
+@Component
+public class MicrometerTransferObserver implements TransferObserver
+{
+    private final MeterRegistry registry;
+    private final Map<String, AliasState> states = new ConcurrentHashMap<>();
+
+    public MicrometerTransferObserver(final MeterRegistry registry)
+    {
+        this.registry = registry;
+    }
+
+    @Override
+    public void phaseCompleted(final String alias, final TransferPhase phase, final Duration elapsed)
+    {
+        Timer.builder("my2ch.transfer.phase")
+                .description("Time spent in each phase of a transfer")
+                .tag("alias", alias)
+                .tag("phase", phase.name().toLowerCase())
+                .register(registry)
+                .record(elapsed);
+    }
+
+    @Override
+    public void progress(final String alias, final TransferProgress progress)
+    {
+        final AliasState state = state(alias);
+        state.inFlightRows.set(progress.getReadRows());
+        state.inFlightBytes.set(progress.getReadBytes());
+    }
+
+    @Override
+    public void watermark(final String alias, final String watermark)
+    {
+        state(alias).watermark = toNumber(watermark);
+    }
+
+    @Override
+    public void transferred(final String alias, final long rows, final long bytes, final Duration elapsed)
+    {
+        final AliasState state = state(alias);
+        state.inFlightRows.set(0);
+        state.inFlightBytes.set(0);
+        state.rowsPerSecond = elapsed.isZero() ? 0 : rows * 1_000_000_000D / elapsed.toNanos();
+
+        Timer.builder("my2ch.transfer")
+                .description("Duration of complete transfers")
+                .tag("alias", alias)
+                .register(registry)
+                .record(elapsed);
+        Counter.builder("my2ch.transfer.rows")
+                .description("Rows transferred")
+                .tag("alias", alias)
+                .register(registry)
+                .increment(rows);
+        Counter.builder("my2ch.transfer.bytes")
+                .description("Bytes read from the source")
+                .baseUnit("bytes")
+                .tag("alias", alias)
+                .register(registry)
+                .increment(bytes);
+    }
+
+    @Override
+    public void failed(final String alias, final Exception exception)
+    {
+        final AliasState state = state(alias);
+        state.inFlightRows.set(0);
+        state.inFlightBytes.set(0);
+
+        Counter.builder("my2ch.transfer.failures")
+                .description("Failed transfers")
+                .tag("alias", alias)
+                .tag("exception", exception.getClass().getSimpleName())
+                .register(registry)
+                .increment();
+    }
+
+    private AliasState state(final String alias)
+    {
+        return states.computeIfAbsent(alias, a ->
+        {
+            final AliasState state = new AliasState();
+            Gauge.builder("my2ch.transfer.in.flight.rows", state.inFlightRows, AtomicLong::get)
+                    .description("Rows read so far by the running transfer")
+                    .tag("alias", a)
+                    .register(registry);
+            Gauge.builder("my2ch.transfer.in.flight.bytes", state.inFlightBytes, AtomicLong::get)
+                    .description("Bytes read so far by the running transfer")
+                    .baseUnit("bytes")
+                    .tag("alias", a)
+                    .register(registry);
+            Gauge.builder("my2ch.transfer.rows.per.second", state, s -> s.rowsPerSecond)
+                    .description("Throughput of the last completed transfer")
+                    .tag("alias", a)
+                    .register(registry);
+            Gauge.builder("my2ch.transfer.watermark", state, s -> s.watermark)
+                    .description("Last committed watermark. Dates and times are given as epoch seconds")
+                    .tag("alias", a)
+                    .register(registry);
+            return state;
+        });
+    }
+
+    private static double toNumber(final String watermark)
+    {
+        try
+        {
+            return Double.parseDouble(watermark);
+        }
+        catch (NumberFormatException ignored)
+        {
+            // Not a number
+        }
+
+        try
+        {
+            return watermark.length() == 10
+                    ? LocalDate.parse(watermark).atStartOfDay().toEpochSecond(ZoneOffset.UTC)
+                    : LocalDateTime.parse(watermark.replace(' ', 'T')).toEpochSecond(ZoneOffset.UTC);
+        }
+        catch (DateTimeParseException ignored)
+        {
+            return Double.NaN;
+        }
+    }
+
+    private static class AliasState
+    {
+        private final AtomicLong inFlightRows = new AtomicLong();
+        private final AtomicLong inFlightBytes = new AtomicLong();
+        private volatile double rowsPerSecond;
+        private volatile double watermark = Double.NaN;
+    }
+}
@@ -0,0 +1,62 @@
+package com.ethlo.my2ch.scheduler;
+
+import java.time.Duration;
+
+import com.ethlo.my2ch.config.AdaptiveSchedule;
+
+/**
+ * The interval of an adaptive schedule. A run finding no rows stretches the interval by half, up to the max-interval, while a
+ * run finding a backlog halves it, down to the min-interval. Runs in between leave it as it is. The interval plus the duration
+ * of the last run never exceeds the freshness, so a row committed just after a run started is transferred in time.
+ */
+class AdaptiveInterval
+{
+    private final AdaptiveSchedule settings;
+    private Duration current;
+
+    AdaptiveInterval(final AdaptiveSchedule settings, final Duration initial)
+    {
+        this.settings = settings;
+        this.current = clamp(initial != null ? initial : settings.getMinInterval());
+    }
+
+    Duration get()
+    {
+        return current;
+    }
+
+    /**
+     * @param rows    The rows transferred by the last run
+     * @param elapsed The duration of the last run
+     * @return The interval until the next run
+     */
+    Duration update(final long rows, final Duration elapsed)
+    {
+        Duration next = current;
+        if (rows == 0)
+        {
+            next = current.plus(current.dividedBy(2));
+        }
+        else if (rows >= settings.getBacklogRows())
+        {
+            next = current.dividedBy(2);
+        }
+
+        if (settings.getFreshness() != null)
+        {
+            final Duration limit = settings.getFreshness().minus(elapsed);
+            next = next.compareTo(limit) > 0 ? limit : next;
+        }
+        current = clamp(next);
+        return current;
+    }
+
+    private Duration clamp(final Duration interval)
+    {
+        if (interval.compareTo(settings.getMinInterval()) < 0)
+        {
+            return settings.getMinInterval();
+        }
+        return interval.compareTo(settings.getMaxInterval()) > 0 ? settings.getMaxInterval() : interval;
+    }
+}
@@ -0,0 +1,241 @@
+package com.ethlo.my2ch.scheduler;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.scheduling.support.CronExpression;
+import org.springframework.util.Assert;
+
+import com.ethlo.my2ch.config.Schedule;
+
+/**
+ * Runs scheduled transfers on a fixed number of slots. When more transfers are due than there are free slots, those with the
+ * highest priority go first, and among equal priority the one due the longest. The transfers running against one MySQL
+ * host and one ClickHouse server are capped, so aliases sharing a host cannot all start at once. An alias that keeps failing
+ * backs off exponentially, up to its max-backoff, so it does not take a slot at every interval. With an adaptive schedule,
+ * the interval follows the rows found by recent runs, see {@link AdaptiveInterval}.
+ * <p>
+ * All bookkeeping happens on the single dispatcher thread, so it needs no locking.
+ */
+public class FairScheduler
+{
+    private static final Logger logger = LoggerFactory.getLogger(FairScheduler.class);
+    private static final Duration TICK = Duration.ofSeconds(1);
+    private static final Duration MIN_BACKOFF = Duration.ofSeconds(30);
+
+    private final int slots;
+    private final int maxPerHost;
+    private final int maxPerCluster;
+    private final Clock clock;
+    private final ScheduledExecutorService dispatcher = Executors.newSingleThreadScheduledExecutor(new CustomizableThreadFactory("my2ch-dispatcher-"));
+    private final ExecutorService workers;
+    private final List<Entry> entries = new ArrayList<>();
+    private final Map<String, Integer> runningPerHost = new HashMap<>();
+    private final Map<String, Integer> runningPerCluster = new HashMap<>();
+    private int running;
+
+    /**
+     * @param slots         The number of transfers running at the same time
+     * @param maxPerHost    The number of transfers running at the same time against one MySQL host
+     * @param maxPerCluster The number of transfers running at the same time against one ClickHouse server
+     */
+    public FairScheduler(final int slots, final int maxPerHost, final int maxPerCluster)
+    {
+        this(slots, maxPerHost, maxPerCluster, Clock.systemDefaultZone(), TICK);
+    }
+
+    /**
+     * @param clock Decides when a transfer is due
+     * @param tick  The delay between checks for due transfers
+     */
+    FairScheduler(final int slots, final int maxPerHost, final int maxPerCluster, final Clock clock, final Duration tick)
+    {
+        this.slots = slots;
+        this.maxPerHost = maxPerHost;
+        this.maxPerCluster = maxPerCluster;
+        this.clock = clock;
+        this.workers = Executors.newFixedThreadPool(slots, new CustomizableThreadFactory("my2ch-"));
+        dispatcher.scheduleWithFixedDelay(this::dispatch, tick.toMillis(), tick.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @param host    The MySQL host of the transfer
+     * @param cluster The ClickHouse server of the transfer
+     * @param task    Runs the transfer once and returns the number of rows transferred, throwing if it fails
+     */
+    public void schedule(final String alias, final Schedule schedule, final String host, final String cluster, final LongSupplier task)
+    {
+        Assert.isTrue(schedule.getCron() != null ^ (schedule.getInterval() != null || schedule.getAdaptive() != null),
+                "Schedule of " + alias + " needs either an interval, an adaptive interval or a cron expression");
+        final CronExpression cron = schedule.getCron() != null ? CronExpression.parse(schedule.getCron()) : null;
+        dispatcher.execute(() ->
+        {
+            final Entry entry = new Entry(alias, schedule, cron, host, cluster, task);
+            entry.due = entry.next(clock);
+            entries.add(entry);
+            logger.info("Scheduled {} with priority {}, next run at {}", alias, schedule.getPriority(), entry.due);
+        });
+    }
+
+    public void shutdown()
+    {
+        dispatcher.shutdownNow();
+        workers.shutdown();
+    }
+
+    private void dispatch()
+    {
+        final Instant now = clock.instant();
+        final List<Entry> due = new ArrayList<>();
+        for (final Entry entry : entries)
+        {
+            if (!entry.running && !entry.due.isAfter(now))
+            {
+                due.add(entry);
+            }
+        }
+        due.sort(Comparator.comparingInt((Entry entry) -> -entry.schedule.getPriority()).thenComparing(entry -> entry.due));
+
+        for (final Entry entry : due)
+        {
+            if (running >= slots)
+            {
+                logger.debug("All {} slots busy, {} transfers waiting", slots, due.size());
+                return;
+            }
+
+            if (runningPerHost.getOrDefault(entry.host, 0) >= maxPerHost || runningPerCluster.getOrDefault(entry.cluster, 0) >= maxPerCluster)
+            {
+                continue;
+            }
+            start(entry);
+        }
+    }
+
+    private void start(final Entry entry)
+    {
+        entry.running = true;
+        running++;
+        runningPerHost.merge(entry.host, 1, Integer::sum);
+        runningPerCluster.merge(entry.cluster, 1, Integer::sum);
+        logger.debug("Starting {}, {} behind schedule", entry.alias, Duration.between(entry.due, clock.instant()));
+
+        workers.execute(() ->
+        {
+            final long started = System.nanoTime();
+            long rows = -1;
+            try
+            {
+                rows = entry.task.getAsLong();
+            }
+            catch (Exception exc)
+            {
+                logger.error("Scheduled transfer of {} failed: {}", entry.alias, exc.getMessage(), exc);
+            }
+
+            final long result = rows;
+            final Duration elapsed = Duration.ofNanos(System.nanoTime() - started);
+            dispatcher.execute(() -> finished(entry, result, elapsed));
+        });
+    }
+
+    /**
+     * @param rows The rows transferred, or -1 if the run failed
+     */
+    private void finished(final Entry entry, final long rows, final Duration elapsed)
+    {
+        entry.running = false;
+        running--;
+        runningPerHost.merge(entry.host, -1, Integer::sum);
+        runningPerCluster.merge(entry.cluster, -1, Integer::sum);
+
+        if (rows >= 0 && entry.adaptive != null)
+        {
+            final Duration previous = entry.adaptive.get();
+            final Duration interval = entry.adaptive.update(rows, elapsed);
+            if (!interval.equals(previous))
+            {
+                logger.debug("{} transferred {} rows in {}, interval is now {}", entry.alias, rows, elapsed, interval);
+            }
+        }
+
+        final Instant now = clock.instant();
+        Instant next = entry.next(clock);
+        if (rows >= 0)
+        {
+            entry.failures = 0;
+        }
+        else
+        {
+            entry.failures++;
+            final Instant retry = now.plus(entry.getBackoff());
+            next = retry.isAfter(next) ? retry : next;
+            logger.info("{} failed {} times in a row, next attempt at {}", entry.alias, entry.failures, next);
+        }
+        entry.due = next;
+
+        // A slot was freed, so start whatever is waiting for it right away
+        dispatch();
+    }
+
+    private static class Entry
+    {
+        private final String alias;
+        private final Schedule schedule;
+        private final CronExpression cron;
+        private final AdaptiveInterval adaptive;
+        private final String host;
+        private final String cluster;
+        private final LongSupplier task;
+
+        private Instant due;
+        private boolean running;
+        private int failures;
+
+        Entry(final String alias, final Schedule schedule, final CronExpression cron, final String host, final String cluster, final LongSupplier task)
+        {
+            this.alias = alias;
+            this.schedule = schedule;
+            this.cron = cron;
+            this.adaptive = schedule.getAdaptive() != null ? new AdaptiveInterval(schedule.getAdaptive(), schedule.getInterval()) : null;
+            this.host = host;
+            this.cluster = cluster;
+            this.task = task;
+        }
+
+        Instant next(final Clock clock)
+        {
+            final Duration interval = adaptive != null ? adaptive.get() : schedule.getInterval();
+            final Instant next = cron != null ? cron.next(ZonedDateTime.now(clock)).toInstant() : clock.instant().plus(interval);
+            final long jitterMillis = schedule.getJitter().toMillis();
+            return jitterMillis > 0 ? next.plusMillis(ThreadLocalRandom.current().nextLong(jitterMillis + 1)) : next;
+        }
+
+        /**
+         * @return The delay before retrying, doubling with each consecutive failure
+         */
+        Duration getBackoff()
+        {
+            final Duration interval = adaptive != null ? adaptive.get() : schedule.getInterval();
+            final Duration base = interval != null && interval.compareTo(MIN_BACKOFF) > 0 ? interval : MIN_BACKOFF;
+            final Duration backoff = base.multipliedBy(1L << Math.min(failures - 1, 20));
+            return backoff.compareTo(schedule.getMaxBackoff()) < 0 ? backoff : schedule.getMaxBackoff();
+        }
+    }
+}
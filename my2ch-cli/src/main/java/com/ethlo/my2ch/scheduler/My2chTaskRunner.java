@@ -10,14 +10,22 @@ import java.util.Locale;
 import java.util.Map;
 import java.util.Optional;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.locks.ReentrantLock;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.boot.task.TaskSchedulerBuilder;
 import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+import org.springframework.util.StringUtils;
 
+import com.ethlo.my2ch.ConnectionRegistry;
 import com.ethlo.my2ch.My2ch;
+import com.ethlo.my2ch.TransferObserver;
 import com.ethlo.my2ch.TransferStatistics;
+import com.ethlo.my2ch.cdc.BinlogChangeCapture;
+import com.ethlo.my2ch.config.DeleteSync;
+import com.ethlo.my2ch.config.MysqlConfig;
 import com.ethlo.my2ch.config.Schedule;
 import com.ethlo.my2ch.config.TransferConfig;
 
@@ -25,11 +33,24 @@ public class My2chTaskRunner implements TaskStatusListener
 {
     private static final Logger logger = LoggerFactory.getLogger(My2chTaskRunner.class);
     private final ThreadPoolTaskScheduler taskScheduler;
+    private final FairScheduler fairScheduler;
     private final Map<String, TransferConfig> tasks = new ConcurrentHashMap<>();
     private final Map<String, TransferStatistics> lastSuccess = new ConcurrentHashMap<>();
+    private final Map<String, BinlogChangeCapture> changeCaptures = new ConcurrentHashMap<>();
+    private final ConnectionRegistry connectionRegistry;
+    private final TransferObserver observer;
+    private final List<TaskStatusListener> listeners = new CopyOnWriteArrayList<>();
+    private final Map<String, ReentrantLock> aliasLocks = new ConcurrentHashMap<>();
 
-    public My2chTaskRunner(final int poolSize)
+    /**
+     * @param poolSize      The number of threads for reconciliation and delete sync
+     * @param fairScheduler Runs the scheduled transfers
+     */
+    public My2chTaskRunner(final int poolSize, final FairScheduler fairScheduler, final ConnectionRegistry connectionRegistry, final TransferObserver observer)
     {
+        this.fairScheduler = fairScheduler;
+        this.connectionRegistry = connectionRegistry;
+        this.observer = observer;
         this.taskScheduler = new TaskSchedulerBuilder()
                 .threadNamePrefix("my2ch-")
                 .poolSize(poolSize)
@@ -37,37 +58,78 @@ public class My2chTaskRunner implements TaskStatusListener
         taskScheduler.initialize();
     }
 
-    public void runAtInterval(final My2ch task, final Duration interval)
+    public TransferStatistics runTask(My2ch task)
     {
-        this.tasks.put(task.getConfig().getAlias(), task.getConfig());
-        taskScheduler.scheduleWithFixedDelay(() ->
+        final ReentrantLock lock = getLock(task.getConfig().getAlias());
+        lock.lock();
+        try
         {
-            try
-            {
-                runTask(task);
-            }
-            catch (Exception exc)
-            {
-                logger.error(exc.getMessage(), exc);
-                finishedError(task.getConfig().getAlias(), exc);
-            }
-        }, interval);
+            return doRunTask(task);
+        }
+        finally
+        {
+            lock.unlock();
+        }
     }
 
-    public TransferStatistics runTask(My2ch task)
+    /**
+     * Reconciliation and delete sync change the same rows as the transfers, so only one of them runs for an alias at a time
+     */
+    private ReentrantLock getLock(final String alias)
+    {
+        return aliasLocks.computeIfAbsent(alias, a -> new ReentrantLock());
+    }
+
+    /**
+     * Runs a maintenance task unless a transfer or other maintenance task of the alias is running, in which case it waits for the next interval
+     */
+    private void runExclusive(final String alias, final String name, final Runnable runnable)
+    {
+        final ReentrantLock lock = getLock(alias);
+        if (!lock.tryLock())
+        {
+            logger.info("Skipping {} of {}, as the alias is busy", name, alias);
+            return;
+        }
+
+        try
+        {
+            runnable.run();
+        }
+        catch (Exception exc)
+        {
+            logger.error("{} of {} failed: {}", StringUtils.capitalize(name), alias, exc.getMessage(), exc);
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    private TransferStatistics doRunTask(My2ch task)
     {
         logger.info("Task {} - Starting", task.getConfig().getAlias());
+        task.setObserver(observer);
         final OffsetDateTime started = OffsetDateTime.now();
-        final long rowCount = task.run(progress ->
+        final TransferStatistics stats;
+        try
         {
-            logger.info("Task {} - Progress {}", task.getConfig().getAlias(), format(progress.getReadRows()));
-            return true;
-        });
-        final Duration elapsed = Duration.between(started, OffsetDateTime.now());
+            final long rowCount = task.run(progress ->
+            {
+                logger.info("Task {} - Progress {}", task.getConfig().getAlias(), format(progress.getReadRows()));
+                return true;
+            });
+            final Duration elapsed = Duration.between(started, OffsetDateTime.now());
+            stats = new TransferStatistics(rowCount, started, elapsed, task.getStats());
+        }
+        catch (RuntimeException exc)
+        {
+            finishedError(task.getConfig().getAlias(), exc);
+            throw exc;
+        }
 
-        final TransferStatistics stats = new TransferStatistics(rowCount, started, elapsed, task.getStats());
         logger.info("Task {} - Completed with {} new rows in {} ({}/sec). {} total rows. Last modified {}",
-                task.getConfig().getAlias(), format(rowCount), elapsed, format(stats.getRowsPerSecond()), format(stats.getTableStatistics().get("rows")), stats.getTableStatistics().get("last_modified")
+                task.getConfig().getAlias(), format(stats.getRows()), stats.getElapsed(), format(stats.getRowsPerSecond()), format(stats.getTableStatistics().get("rows")), stats.getTableStatistics().get("last_modified")
         );
 
         finishedSuccess(task.getConfig().getAlias(), stats);
@@ -96,18 +158,58 @@ public class My2chTaskRunner implements TaskStatusListener
         }
     }
 
-    public void runAtInterval(final TransferConfig config)
+    public void schedule(final TransferConfig config)
+    {
+        final Schedule schedule = config.getSchedule();
+        if (schedule == null)
+        {
+            return;
+        }
+
+        final MysqlConfig mysql = config.getSource().getMysql();
+        final My2ch task = new My2ch(config, connectionRegistry);
+        this.tasks.put(config.getAlias(), config);
+        fairScheduler.schedule(config.getAlias(), schedule, mysql.getHost() + ":" + mysql.getPort(), config.getTarget().getClickhouse().getUrl(), () -> runTask(task).getRows());
+    }
+
+    public void reconcileAtInterval(final TransferConfig config)
+    {
+        final Duration interval = config.getReconcile().getInterval();
+        if (interval == null)
+        {
+            return;
+        }
+
+        logger.info("Scheduling reconciliation of {} with interval {}", config.getAlias(), interval);
+        final My2ch task = new My2ch(config, connectionRegistry);
+        taskScheduler.scheduleWithFixedDelay(() -> runExclusive(config.getAlias(), "reconciliation", task::reconcile), interval);
+    }
+
+    public void syncDeletesAtInterval(final TransferConfig config)
     {
-        final Optional<Duration> interval = Optional.ofNullable(config.getSchedule()).map(Schedule::getInterval);
-        if (interval.isPresent())
+        final DeleteSync deleteSync = config.getDeleteSync();
+        if (deleteSync == null)
         {
-            logger.info("Scheduling {} with interval {}", config.getAlias(), interval.get());
-            runAtInterval(new My2ch(config), interval.get());
+            return;
         }
+
+        logger.info("Scheduling delete sync of {} with interval {}", config.getAlias(), deleteSync.getInterval());
+        final My2ch task = new My2ch(config, connectionRegistry);
+        taskScheduler.scheduleWithFixedDelay(() -> runExclusive(config.getAlias(), "delete sync", task::syncDeletes), deleteSync.getInterval());
+    }
+
+    public void startChangeCapture(final TransferConfig config, final BinlogChangeCapture changeCapture)
+    {
+        logger.info("Starting change capture for {}", config.getAlias());
+        changeCapture.start();
+        this.tasks.put(config.getAlias(), config);
+        this.changeCaptures.put(config.getAlias(), changeCapture);
     }
 
     public void shutdown()
     {
+        changeCaptures.values().forEach(BinlogChangeCapture::close);
+        fairScheduler.shutdown();
         taskScheduler.setWaitForTasksToCompleteOnShutdown(true);
         taskScheduler.shutdown();
     }
@@ -120,21 +222,30 @@ public class My2chTaskRunner implements TaskStatusListener
             final Map<String, Object> data = new LinkedHashMap<>();
             data.put("alias", alias);
             data.put("last_run", lastSuccess.get(alias));
+            Optional.ofNullable(changeCaptures.get(alias))
+                    .flatMap(BinlogChangeCapture::getPosition)
+                    .ifPresent(position -> data.put("binlog_position", position.toString()));
             result.add(data);
         }
         return result;
     }
 
+    public void addListener(final TaskStatusListener listener)
+    {
+        listeners.add(listener);
+    }
+
     @Override
     public void finishedSuccess(final String task, final TransferStatistics transferStatistics)
     {
         lastSuccess.put(task, transferStatistics);
+        listeners.forEach(listener -> listener.finishedSuccess(task, transferStatistics));
     }
 
     @Override
     public void finishedError(final String task, final Exception exception)
     {
-
+        listeners.forEach(listener -> listener.finishedError(task, exception));
     }
 
     public Optional<TransferConfig> getTask(String name)
@@ -0,0 +1,51 @@
+package com.ethlo.my2ch.scheduler;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.Duration;
+
+import org.junit.jupiter.api.Test;
+
+import com.ethlo.my2ch.config.AdaptiveSchedule;
+
+class AdaptiveIntervalTest
+{
+    private final AdaptiveSchedule settings = new AdaptiveSchedule(Duration.ofSeconds(10), Duration.ofMinutes(10), null, 1000L);
+
+    @Test
+    void testStretchesToMaxWhenIdle()
+    {
+        final AdaptiveInterval interval = new AdaptiveInterval(settings, Duration.ofSeconds(30));
+        assertThat(interval.update(0, Duration.ofSeconds(1))).isEqualTo(Duration.ofSeconds(45));
+        for (int i = 0; i < 20; i++)
+        {
+            interval.update(0, Duration.ofSeconds(1));
+        }
+        assertThat(interval.get()).isEqualTo(Duration.ofMinutes(10));
+    }
+
+    @Test
+    void testShrinksToMinOnBacklog()
+    {
+        final AdaptiveInterval interval = new AdaptiveInterval(settings, Duration.ofMinutes(1));
+        assertThat(interval.update(5000, Duration.ofSeconds(1))).isEqualTo(Duration.ofSeconds(30));
+        assertThat(interval.update(5000, Duration.ofSeconds(1))).isEqualTo(Duration.ofSeconds(15));
+        assertThat(interval.update(5000, Duration.ofSeconds(1))).isEqualTo(Duration.ofSeconds(10));
+    }
+
+    @Test
+    void testKeepsIntervalForModerateChanges()
+    {
+        final AdaptiveInterval interval = new AdaptiveInterval(settings, Duration.ofMinutes(1));
+        assertThat(interval.update(10, Duration.ofSeconds(1))).isEqualTo(Duration.ofMinutes(1));
+    }
+
+    @Test
+    void testRespectsFreshness()
+    {
+        final AdaptiveSchedule withFreshness = new AdaptiveSchedule(Duration.ofSeconds(10), Duration.ofMinutes(10), Duration.ofMinutes(2), 1000L);
+        final AdaptiveInterval interval = new AdaptiveInterval(withFreshness, Duration.ofMinutes(1));
+        assertThat(interval.update(0, Duration.ofSeconds(40))).isEqualTo(Duration.ofSeconds(80));
+        assertThat(interval.update(0, Duration.ofSeconds(115))).isEqualTo(Duration.ofSeconds(10));
+    }
+}
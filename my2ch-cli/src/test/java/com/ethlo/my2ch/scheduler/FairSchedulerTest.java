@@ -0,0 +1,189 @@
+package com.ethlo.my2ch.scheduler;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import com.ethlo.my2ch.config.Schedule;
+
+class FairSchedulerTest
+{
+    private static final Duration INTERVAL = Duration.ofHours(1);
+
+    private final TestClock clock = new TestClock();
+    private final List<String> started = new CopyOnWriteArrayList<>();
+    private final CountDownLatch release = new CountDownLatch(1);
+    private FairScheduler scheduler;
+
+    @AfterEach
+    void tearDown()
+    {
+        release.countDown();
+        scheduler.shutdown();
+    }
+
+    @Test
+    void testSlotCap() throws InterruptedException
+    {
+        scheduler = new FairScheduler(2, 10, 10, clock, Duration.ofMillis(10));
+        schedule("a", 0, "host-a", "ch");
+        schedule("b", 0, "host-b", "ch");
+        schedule("c", 0, "host-c", "ch");
+        makeDue();
+
+        awaitStarted(2);
+        settle();
+        assertThat(started).hasSize(2);
+    }
+
+    @Test
+    void testHostCap() throws InterruptedException
+    {
+        scheduler = new FairScheduler(4, 1, 10, clock, Duration.ofMillis(10));
+        schedule("a1", 1, "host-a", "ch");
+        schedule("a2", 0, "host-a", "ch");
+        schedule("b", 0, "host-b", "ch");
+        makeDue();
+
+        awaitStarted(2);
+        settle();
+        assertThat(started).containsExactlyInAnyOrder("a1", "b");
+    }
+
+    @Test
+    void testClusterCap() throws InterruptedException
+    {
+        scheduler = new FairScheduler(4, 10, 1, clock, Duration.ofMillis(10));
+        schedule("a", 1, "host-a", "ch-1");
+        schedule("b", 0, "host-b", "ch-1");
+        schedule("c", 0, "host-c", "ch-2");
+        makeDue();
+
+        awaitStarted(2);
+        settle();
+        assertThat(started).containsExactlyInAnyOrder("a", "c");
+    }
+
+    @Test
+    void testPriorityOrder() throws InterruptedException
+    {
+        scheduler = new FairScheduler(1, 1, 1, clock, Duration.ofMillis(10));
+        final CountDownLatch done = new CountDownLatch(3);
+        for (final String alias : new String[]{"low", "high", "mid"})
+        {
+            final int priority = alias.equals("high") ? 5 : alias.equals("mid") ? 2 : 0;
+            scheduler.schedule(alias, schedule(priority), "host", "ch", () ->
+            {
+                started.add(alias);
+                done.countDown();
+                return 0;
+            });
+        }
+        makeDue();
+
+        assertThat(done.await(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(started).containsExactly("high", "mid", "low");
+    }
+
+    @Test
+    void testFreedSlotIsTaken() throws InterruptedException
+    {
+        scheduler = new FairScheduler(1, 1, 1, clock, Duration.ofMillis(10));
+        schedule("a", 1, "host", "ch");
+        schedule("b", 0, "host", "ch");
+        makeDue();
+
+        awaitStarted(1);
+        settle();
+        assertThat(started).containsExactly("a");
+
+        release.countDown();
+        awaitStarted(2);
+        assertThat(started).containsExactly("a", "b");
+    }
+
+    private void schedule(final String alias, final int priority, final String host, final String cluster)
+    {
+        final LongSupplier task = () ->
+        {
+            started.add(alias);
+            try
+            {
+                release.await();
+            }
+            catch (InterruptedException exc)
+            {
+                Thread.currentThread().interrupt();
+            }
+            return 0;
+        };
+        scheduler.schedule(alias, schedule(priority), host, cluster, task);
+    }
+
+    private static Schedule schedule(final int priority)
+    {
+        return new Schedule(INTERVAL, null, null, priority, null, null);
+    }
+
+    private void makeDue() throws InterruptedException
+    {
+        // Let the dispatcher register the aliases before their first run is due
+        settle();
+        clock.advance(INTERVAL);
+    }
+
+    private void awaitStarted(final int count) throws InterruptedException
+    {
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (started.size() < count && System.nanoTime() < deadline)
+        {
+            Thread.sleep(10);
+        }
+        assertThat(started).hasSizeGreaterThanOrEqualTo(count);
+    }
+
+    private static void settle() throws InterruptedException
+    {
+        Thread.sleep(200);
+    }
+
+    private static class TestClock extends Clock
+    {
+        private volatile Instant now = Instant.parse("2024-01-01T00:00:00Z");
+
+        void advance(final Duration duration)
+        {
+            now = now.plus(duration);
+        }
+
+        @Override
+        public ZoneId getZone()
+        {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(final ZoneId zone)
+        {
+            return this;
+        }
+
+        @Override
+        public Instant instant()
+        {
+            return now;
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package com.ethlo.my2ch;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.springframework.util.Assert;
+
+public class ChunkPlanner
+{
+    private ChunkPlanner()
+    {
+
+    }
+
+    /**
+     * Split the closed range [min, max] into at most <code>chunks</code> contiguous ranges of near equal size
+     *
+     * @param min    The lowest key value
+     * @param max    The highest key value
+     * @param chunks The desired number of ranges
+     * @return The ranges, in ascending order
+     */
+    public static List<KeyRange> split(final long min, final long max, final int chunks)
+    {
+        Assert.isTrue(min <= max, "min must be less than or equal to max");
+        Assert.isTrue(chunks > 0, "chunks must be positive");
+
+        final long span = Math.addExact(Math.subtractExact(max, min), 1);
+        final int count = (int) Math.min(chunks, span);
+        final long step = span / count;
+        final long remainder = span % count;
+
+        final List<KeyRange> ranges = new ArrayList<>(count);
+        long from = min;
+        for (int i = 0; i < count; i++)
+        {
+            final long to = from + step + (i < remainder ? 1 : 0);
+            ranges.add(new KeyRange(from, to));
+            from = to;
+        }
+        return ranges;
+    }
+}
@@ -0,0 +1,67 @@
+package com.ethlo.my2ch;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * The ClickHouse settings configured for an alias. Settings of the MySQL database engine belong in the definition of the
+ * database, while all others are passed with the inserts and DDL statements of the transfer.
+ */
+class ClickHouseSettings
+{
+    private static final Set<String> MYSQL_ENGINE_SETTINGS = Set.of("connection_pool_size", "connection_max_tries", "connection_wait_timeout", "connection_auto_close");
+    private static final Pattern NUMBER = Pattern.compile("-?\\d+(\\.\\d+)?");
+
+    private final Map<String, String> query = new LinkedHashMap<>();
+    private final Map<String, String> engine = new LinkedHashMap<>();
+
+    ClickHouseSettings(final Map<String, String> settings)
+    {
+        settings.forEach((name, value) -> (MYSQL_ENGINE_SETTINGS.contains(name) ? engine : query).put(name, value));
+    }
+
+    /**
+     * @return The settings for the statements of the transfer, by name
+     */
+    Map<String, String> getQuery()
+    {
+        return Collections.unmodifiableMap(query);
+    }
+
+    /**
+     * @param extra Settings specific to the statement, overriding the configured ones
+     * @return A SETTINGS clause with a trailing space, or an empty string if there are no settings
+     */
+    String clause(final Map<String, String> extra)
+    {
+        final Map<String, String> all = new LinkedHashMap<>(query);
+        all.putAll(extra);
+        return toClause(all);
+    }
+
+    /**
+     * @return A SETTINGS clause for the MySQL database engine with a trailing space, or an empty string if there are no settings
+     */
+    String engineClause()
+    {
+        return toClause(engine);
+    }
+
+    private static String toClause(final Map<String, String> settings)
+    {
+        if (settings.isEmpty())
+        {
+            return "";
+        }
+        return "SETTINGS " + settings.entrySet().stream().map(e -> e.getKey() + " = " + literal(e.getValue())).collect(Collectors.joining(", ")) + " ";
+    }
+
+    private static String literal(final String value)
+    {
+        return NUMBER.matcher(value).matches() ? value : "'" + value.replace("\\", "\\\\").replace("'", "\\'") + "'";
+    }
+}
@@ -0,0 +1,56 @@
+package com.ethlo.my2ch;
+
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.util.StringUtils;
+
+public class ClickHouseTableDefinition
+{
+    private ClickHouseTableDefinition()
+    {
+
+    }
+
+    /**
+     * @return The CREATE TABLE statement for a ClickHouse table holding the given source columns
+     */
+    public static String create(final String dbAndTable, final List<SourceColumn> sourceColumns, final String engineDefinition)
+    {
+        return create(dbAndTable, getColumnTypes(sourceColumns), engineDefinition);
+    }
+
+    /**
+     * @return The ClickHouse type of each source column, in order
+     */
+    public static Map<String, String> getColumnTypes(final List<SourceColumn> sourceColumns)
+    {
+        final Map<String, String> columnTypes = new LinkedHashMap<>();
+        for (final SourceColumn column : sourceColumns)
+        {
+            columnTypes.put(column.getName(), ClickHouseTypeDefinitionConverter.fromMysqlType(column.getType(), column.isNullable()));
+        }
+        return columnTypes;
+    }
+
+    /**
+     * @param columnTypes The ClickHouse type of each column, in order
+     * @return The CREATE TABLE statement for a ClickHouse table with the given columns
+     */
+    public static String create(final String dbAndTable, final Map<String, String> columnTypes, final String engineDefinition)
+    {
+        final StringBuilder s = new StringBuilder();
+        s.append("CREATE TABLE ").append(dbAndTable).append(" (");
+        final List<String> columns = new LinkedList<>();
+        for (final Map.Entry<String, String> column : columnTypes.entrySet())
+        {
+            columns.add(column.getKey() + " " + column.getValue());
+        }
+        s.append(StringUtils.collectionToDelimitedString(columns, ",\n"));
+        s.append(") ");
+        s.append(engineDefinition);
+        return s.toString();
+    }
+}
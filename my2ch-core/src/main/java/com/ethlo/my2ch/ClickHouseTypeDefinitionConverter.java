@@ -9,6 +9,8 @@ import com.ethlo.clackshack.model.DataTypes;
 
 public class ClickHouseTypeDefinitionConverter
 {
+    private static final Pattern DIGITS = Pattern.compile("([\\d]+)");
+
     private  ClickHouseTypeDefinitionConverter()
     {
 
@@ -57,8 +59,7 @@ public class ClickHouseTypeDefinitionConverter
         }
         else if (lower.contains("decimal"))
         {
-            final Pattern pattern = Pattern.compile("([\\d]+)");
-            final Matcher matcher = pattern.matcher(lower);
+            final Matcher matcher = DIGITS.matcher(lower);
             Assert.isTrue(matcher.find(), "Should have number of digits: " + lower);
             final int p = Integer.parseInt(matcher.group(1));
             Assert.isTrue(matcher.find(), "Should have numbers of fraction digits: " + lower);
@@ -0,0 +1,327 @@
+package com.ethlo.my2ch;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.StringJoiner;
+import java.util.UUID;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+
+import com.ethlo.clackshack.ClackShack;
+import com.ethlo.my2ch.config.CodecSelection;
+import com.ethlo.my2ch.config.MysqlConfig;
+import com.ethlo.my2ch.config.TransferConfig;
+import com.ethlo.my2ch.state.StateStore;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Chooses a compression codec per column by loading a sample of the source query into a scratch ClickHouse table, with one
+ * copy of each column per candidate codec. The codec giving the smallest column wins, unless another one within the size
+ * tolerance reads faster. Read speed is the processing time recorded by the server, not the time of the round trip.
+ * <p>
+ * The result is kept in the state store and reused for as long as the column types stay the same.
+ */
+class CodecAdvisor
+{
+    private static final Logger logger = LoggerFactory.getLogger(CodecAdvisor.class);
+    private static final String KEY = "codecs";
+    private static final String DEFAULT_CODEC = "LZ4";
+    private static final int READ_ATTEMPTS = 5;
+    private static final ObjectMapper mapper = new ObjectMapper();
+
+    private static final List<String> GENERAL_CODECS = Arrays.asList(DEFAULT_CODEC, "ZSTD(1)", "ZSTD(3)", "ZSTD(9)");
+    private static final List<String> SEQUENCE_CODECS = Arrays.asList("Delta, LZ4", "Delta, ZSTD(1)", "DoubleDelta", "DoubleDelta, ZSTD(1)");
+    private static final List<String> INTEGER_CODECS = Arrays.asList("T64, LZ4", "T64, ZSTD(1)");
+    private static final List<String> FLOAT_CODECS = Arrays.asList("Gorilla", "Gorilla, ZSTD(1)");
+
+    private final NamedParameterJdbcTemplate tpl;
+    private final ClackShack clackShack;
+    private final StateStore stateStore;
+    private final TransferConfig config;
+    private final CodecSelection settings;
+
+    CodecAdvisor(final NamedParameterJdbcTemplate tpl, final ClackShack clackShack, final StateStore stateStore, final TransferConfig config)
+    {
+        this.tpl = tpl;
+        this.clackShack = clackShack;
+        this.stateStore = stateStore;
+        this.config = config;
+        this.settings = config.getTarget().getCodecSelection();
+    }
+
+    /**
+     * @param query       The source query
+     * @param columnTypes The ClickHouse type of each column
+     * @return The codec clause of each column that compresses better with something else than the default codec
+     */
+    Map<String, String> advise(final String query, final Map<String, String> columnTypes)
+    {
+        final String alias = config.getAlias();
+        final JsonNode types = mapper.valueToTree(columnTypes);
+        final Optional<Map<String, String>> cached = stateStore.get(alias, KEY).flatMap(value -> parse(value, types));
+        if (cached.isPresent())
+        {
+            logger.debug("Using cached column codecs for {}", alias);
+            return cached.get();
+        }
+
+        final Map<String, List<String>> candidates = new LinkedHashMap<>();
+        columnTypes.forEach((column, type) -> candidates.put(column, getCandidates(type)));
+
+        final String scratchTable = config.getTarget().getClickhouse().getDb() + ".tmp_my2ch_codecs_" + alias;
+        try
+        {
+            final long rows = loadSample(query, columnTypes, candidates, scratchTable);
+            if (rows == 0)
+            {
+                logger.info("No rows to sample for codec selection of {}, using default codecs", alias);
+                return Collections.emptyMap();
+            }
+
+            final Map<String, String> result = choose(candidates, scratchTable, rows);
+            stateStore.put(alias, KEY, format(types, result));
+            return result;
+        }
+        finally
+        {
+            clackShack.ddl("DROP TABLE IF EXISTS " + scratchTable);
+        }
+    }
+
+    private long loadSample(final String query, final Map<String, String> columnTypes, final Map<String, List<String>> candidates, final String scratchTable)
+    {
+        final StringJoiner definitions = new StringJoiner(", ");
+        final StringJoiner select = new StringJoiner(", ");
+        int i = 0;
+        for (final Map.Entry<String, String> column : columnTypes.entrySet())
+        {
+            final List<String> codecs = candidates.get(column.getKey());
+            for (int k = 0; k < codecs.size(); k++)
+            {
+                definitions.add(scratchColumn(i, k) + " " + column.getValue() + " CODEC(" + codecs.get(k) + ")");
+                select.add("`" + column.getKey() + "` AS " + scratchColumn(i, k));
+            }
+            i++;
+        }
+
+        clackShack.ddl("DROP TABLE IF EXISTS " + scratchTable);
+        clackShack.ddl("CREATE TABLE " + scratchTable + " (" + definitions + ") ENGINE = MergeTree ORDER BY tuple()");
+
+        final MysqlConfig mysql = config.getSource().getMysql();
+        final String mysqlDbName = tpl.queryForObject("SELECT DATABASE()", Collections.emptyMap(), String.class);
+        final String viewName = "tmp_my2ch_codecs_" + config.getAlias();
+        tpl.update("CREATE OR REPLACE VIEW " + viewName + " AS SELECT * FROM (" + query + ") my2ch_src LIMIT " + settings.getSampleRows(), Collections.emptyMap());
+        try
+        {
+            logger.debug("Loading {} rows of {} into {} to compare codecs", settings.getSampleRows(), config.getAlias(), scratchTable);
+            clackShack.insert("INSERT INTO " + scratchTable + " SELECT " + select + " FROM mysql('" + mysql.getHost() + ":" + mysql.getPort() + "', '"
+                    + mysqlDbName + "', '" + viewName + "', '" + mysql.getUsername() + "', '" + mysql.getPassword() + "')");
+        }
+        finally
+        {
+            tpl.update("DROP VIEW IF EXISTS " + viewName, Collections.emptyMap());
+        }
+
+        // Compare the codecs on a single part, as they would be after merges
+        clackShack.ddl("OPTIMIZE TABLE " + scratchTable + " FINAL");
+        return clackShack.query("SELECT count() FROM " + scratchTable).get(0, 0, Number.class).longValue();
+    }
+
+    private Map<String, String> choose(final Map<String, List<String>> candidates, final String scratchTable, final long rows)
+    {
+        final String[] dbAndTable = scratchTable.split("\\.", 2);
+        final Map<String, Long> compressed = new LinkedHashMap<>();
+        clackShack.query("SELECT name, data_compressed_bytes FROM system.columns WHERE database = '" + dbAndTable[0] + "' AND table = '" + dbAndTable[1] + "'")
+                .asMap()
+                .forEach(row -> compressed.put((String) row.get("name"), ((Number) row.get("data_compressed_bytes")).longValue()));
+
+        // Only the codecs close enough to the smallest of their column compete on read speed
+        final List<String> contenders = new ArrayList<>();
+        int i = 0;
+        for (final List<String> codecs : candidates.values())
+        {
+            long smallest = Long.MAX_VALUE;
+            for (int k = 0; k < codecs.size(); k++)
+            {
+                smallest = Math.min(smallest, compressed.getOrDefault(scratchColumn(i, k), Long.MAX_VALUE));
+            }
+            for (int k = 0; k < codecs.size(); k++)
+            {
+                if (compressed.getOrDefault(scratchColumn(i, k), Long.MAX_VALUE) <= smallest * (1 + settings.getSizeTolerance()))
+                {
+                    contenders.add(scratchColumn(i, k));
+                }
+            }
+            i++;
+        }
+        final Map<String, Long> readMicros = measureReads(scratchTable, contenders);
+
+        final Map<String, String> result = new LinkedHashMap<>();
+        i = 0;
+        for (final Map.Entry<String, List<String>> column : candidates.entrySet())
+        {
+            // Prefer the fastest to read, or the smallest if the read time is not known
+            final List<String> codecs = column.getValue();
+            int best = -1;
+            for (int k = 0; k < codecs.size(); k++)
+            {
+                final String name = scratchColumn(i, k);
+                if (contenders.contains(name) && (best == -1 || isBetter(name, scratchColumn(i, best), readMicros, compressed)))
+                {
+                    best = k;
+                }
+            }
+
+            final String codec = codecs.get(best);
+            final long defaultSize = compressed.getOrDefault(scratchColumn(i, 0), 0L);
+            final long chosenSize = compressed.getOrDefault(scratchColumn(i, best), 0L);
+            logger.info("Codec selection for {}.{}: {} ({} -> {} bytes for {} rows, {} µs to read)",
+                    config.getAlias(), column.getKey(), codec, defaultSize, chosenSize, rows, readMicros.get(scratchColumn(i, best)));
+            if (!DEFAULT_CODEC.equals(codec))
+            {
+                result.put(column.getKey(), "CODEC(" + codec + ")");
+            }
+            i++;
+        }
+        return result;
+    }
+
+    private static boolean isBetter(final String column, final String best, final Map<String, Long> readMicros, final Map<String, Long> compressed)
+    {
+        final Long micros = readMicros.get(column);
+        final Long bestMicros = readMicros.get(best);
+        if (micros != null && bestMicros != null && !micros.equals(bestMicros))
+        {
+            return micros < bestMicros;
+        }
+        return compressed.getOrDefault(column, Long.MAX_VALUE) < compressed.getOrDefault(best, Long.MAX_VALUE);
+    }
+
+    /**
+     * Reads each column a few times on a single thread, and takes the fastest processing time as recorded by the server in
+     * <code>system.query_log</code>, so the network and the HTTP round trip do not count
+     *
+     * @return The read time of each column in microseconds, or an empty map if the query log is not available
+     */
+    private Map<String, Long> measureReads(final String scratchTable, final List<String> columns)
+    {
+        final String comment = "my2ch-codecs-" + UUID.randomUUID();
+        for (final String column : columns)
+        {
+            for (int attempt = 0; attempt < READ_ATTEMPTS; attempt++)
+            {
+                clackShack.query("SELECT count() FROM " + scratchTable + " WHERE NOT ignore(" + column + ")"
+                        + " SETTINGS max_threads = 1, use_uncompressed_cache = 0, log_comment = '" + comment + "/" + column + "'");
+            }
+        }
+
+        final Map<String, Long> result = new LinkedHashMap<>();
+        try
+        {
+            clackShack.ddl("SYSTEM FLUSH LOGS");
+            clackShack.query("SELECT log_comment, min(ProfileEvents['RealTimeMicroseconds']) AS micros FROM system.query_log "
+                            + "WHERE type = 'QueryFinish' AND event_date >= yesterday() AND startsWith(log_comment, '" + comment + "/') GROUP BY log_comment")
+                    .asMap()
+                    .forEach(row -> result.put(row.get("log_comment").toString().substring(comment.length() + 1), ((Number) row.get("micros")).longValue()));
+        }
+        catch (RuntimeException exc)
+        {
+            logger.warn("Cannot read the query log to compare codec read speed for {}, choosing by size only: {}", config.getAlias(), exc.getMessage());
+        }
+        return result;
+    }
+
+    /**
+     * @return The codecs to try for the ClickHouse type, the default first
+     */
+    static List<String> getCandidates(final String type)
+    {
+        final List<String> result = new ArrayList<>(GENERAL_CODECS);
+        final int paren = type.indexOf('(');
+        final String name = paren != -1 ? type.substring(0, paren) : type;
+        switch (name)
+        {
+            case "Int8":
+            case "Int16":
+            case "Int32":
+            case "Int64":
+            case "UInt8":
+            case "UInt16":
+            case "UInt32":
+            case "UInt64":
+            case "Date":
+            case "Date32":
+            case "DateTime":
+                result.addAll(SEQUENCE_CODECS);
+                result.addAll(INTEGER_CODECS);
+                break;
+            case "DateTime64":
+                result.addAll(SEQUENCE_CODECS);
+                break;
+            case "Float32":
+            case "Float64":
+                result.addAll(FLOAT_CODECS);
+                break;
+            default:
+                // Strings, enums and wrapped types only get general purpose compression
+                break;
+        }
+        return result;
+    }
+
+    private static String scratchColumn(final int column, final int codec)
+    {
+        return "c" + column + "_" + codec;
+    }
+
+    private static String format(final JsonNode types, final Map<String, String> codecs)
+    {
+        final Map<String, Object> state = new LinkedHashMap<>();
+        state.put("types", types);
+        state.put("codecs", codecs);
+        try
+        {
+            return mapper.writeValueAsString(state);
+        }
+        catch (JsonProcessingException exc)
+        {
+            throw new IllegalStateException(exc);
+        }
+    }
+
+    private Optional<Map<String, String>> parse(final String value, final JsonNode types)
+    {
+        try
+        {
+            final JsonNode state = mapper.readTree(value);
+            if (!types.equals(state.path("types")))
+            {
+                return Optional.empty();
+            }
+
+            final Map<String, String> codecs = new LinkedHashMap<>();
+            final Iterator<Map.Entry<String, JsonNode>> fields = state.path("codecs").fields();
+            while (fields.hasNext())
+            {
+                final Map.Entry<String, JsonNode> field = fields.next();
+                codecs.put(field.getKey(), field.getValue().asText());
+            }
+            return Optional.of(codecs);
+        }
+        catch (JsonProcessingException exc)
+        {
+            logger.warn("Ignoring unreadable cached column codecs for {}: {}", config.getAlias(), exc.getMessage());
+            return Optional.empty();
+        }
+    }
+}
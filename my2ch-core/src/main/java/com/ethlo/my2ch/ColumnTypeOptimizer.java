@@ -0,0 +1,245 @@
+package com.ethlo.my2ch;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.StringJoiner;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+
+import com.ethlo.my2ch.config.TypeOptimization;
+
+/**
+ * Chooses tighter ClickHouse column types than {@link ClickHouseTypeDefinitionConverter} does, using the exact MySQL types
+ * and statistics from a sample of the source query:
+ * <ul>
+ *     <li>Integers keep their exact width and signedness</li>
+ *     <li>Enums become <code>Enum8</code> or <code>Enum16</code></li>
+ *     <li>Date-times with fractional seconds become <code>DateTime64</code></li>
+ *     <li>Strings with few distinct values become <code>LowCardinality(String)</code></li>
+ *     <li>Nullable columns without nulls become non-Nullable, if allowed and the sample covers all rows</li>
+ * </ul>
+ */
+class ColumnTypeOptimizer
+{
+    private static final Logger logger = LoggerFactory.getLogger(ColumnTypeOptimizer.class);
+    private static final Pattern PRECISION = Pattern.compile("\\((\\d+)\\)");
+    private static final Pattern QUOTED_VALUE = Pattern.compile("'((?:[^']|'')*)'");
+    private static final Pattern DIGITS = Pattern.compile("(\\d+)");
+
+    private final NamedParameterJdbcTemplate tpl;
+    private final TypeOptimization settings;
+    private final String alias;
+
+    ColumnTypeOptimizer(final NamedParameterJdbcTemplate tpl, final TypeOptimization settings, final String alias)
+    {
+        this.tpl = tpl;
+        this.settings = settings;
+        this.alias = alias;
+    }
+
+    /**
+     * @param query            The source query
+     * @param columns          The columns of the source query
+     * @param allowNonNullable Whether nullable columns may become non-Nullable. Only safe if the table is rebuilt on every transfer
+     *                         and only ever written by that transfer
+     * @return The ClickHouse type of each column, in order
+     */
+    Map<String, String> optimize(final String query, final List<SourceColumn> columns, final boolean allowNonNullable)
+    {
+        final Map<String, Object> sample = sample(query, columns);
+        final long rows = ((Number) sample.get("my2ch_rows")).longValue();
+        final boolean exhaustive = rows < settings.getSampleRows();
+
+        final Map<String, String> result = new LinkedHashMap<>();
+        double bytesBefore = 0;
+        double bytesAfter = 0;
+        for (int i = 0; i < columns.size(); i++)
+        {
+            final SourceColumn column = columns.get(i);
+            final long nulls = toLong(sample.get("n_" + i));
+            final long distinct = toLong(sample.get("d_" + i));
+            final double averageLength = sample.get("l_" + i) != null ? ((Number) sample.get("l_" + i)).doubleValue() : 0;
+
+            final String original = ClickHouseTypeDefinitionConverter.fromMysqlType(column.getType(), column.isNullable());
+            final boolean nullable = column.isNullable() && !(allowNonNullable && exhaustive && nulls == 0);
+            String type = baseType(column.getType());
+            if ("String".equals(type) && rows > 0 && distinct <= settings.getLowCardinalityLimit())
+            {
+                type = nullable ? "LowCardinality(Nullable(String))" : "LowCardinality(String)";
+            }
+            else if (nullable)
+            {
+                type = "Nullable(" + type + ")";
+            }
+            result.put(column.getName(), type);
+
+            final double before = estimateBytes(original, averageLength, distinct);
+            final double after = estimateBytes(type, averageLength, distinct);
+            bytesBefore += before;
+            bytesAfter += after;
+            if (!original.equals(type))
+            {
+                logger.info("Type optimization for {}.{}: {} -> {} (~{} -> ~{} bytes per row)", alias, column.getName(), original, type, round(before), round(after));
+            }
+        }
+
+        logger.info("Type optimization for {} estimated from {} sampled rows: ~{} -> ~{} uncompressed bytes per row ({}% smaller)",
+                alias, rows, round(bytesBefore), round(bytesAfter), bytesBefore > 0 ? round(100 * (bytesBefore - bytesAfter) / bytesBefore) : 0);
+        return result;
+    }
+
+    private Map<String, Object> sample(final String query, final List<SourceColumn> columns)
+    {
+        final StringJoiner select = new StringJoiner(", ");
+        select.add("COUNT(*) AS my2ch_rows");
+        for (int i = 0; i < columns.size(); i++)
+        {
+            final SourceColumn column = columns.get(i);
+            final String name = "`" + column.getName() + "`";
+            if (column.isNullable())
+            {
+                select.add("SUM(" + name + " IS NULL) AS n_" + i);
+            }
+            if ("String".equals(ClickHouseTypeDefinitionConverter.fromMysqlType(column.getType())))
+            {
+                select.add("COUNT(DISTINCT " + name + ") AS d_" + i);
+                select.add("AVG(LENGTH(" + name + ")) AS l_" + i);
+            }
+        }
+
+        final String sql = "SELECT " + select + " FROM (SELECT * FROM (" + query + ") my2ch_src LIMIT " + settings.getSampleRows() + ") my2ch_sample";
+        logger.debug("Sampling source of {}: {}", alias, sql);
+        return tpl.queryForMap(sql, Collections.emptyMap());
+    }
+
+    static String baseType(final String mysqlType)
+    {
+        final String lower = mysqlType.toLowerCase().trim();
+        final boolean unsigned = lower.contains("unsigned");
+        final int end = indexOfAny(lower, '(', ' ');
+        final String name = end != -1 ? lower.substring(0, end) : lower;
+        switch (name)
+        {
+            case "tinyint":
+                return unsigned ? "UInt8" : "Int8";
+            case "smallint":
+                return unsigned ? "UInt16" : "Int16";
+            case "mediumint":
+            case "int":
+            case "integer":
+                return unsigned ? "UInt32" : "Int32";
+            case "bigint":
+                return unsigned ? "UInt64" : "Int64";
+            case "datetime":
+            case "timestamp":
+                final Matcher matcher = PRECISION.matcher(lower);
+                final int precision = matcher.find() ? Integer.parseInt(matcher.group(1)) : 0;
+                return precision > 0 ? "DateTime64(" + precision + ")" : "DateTime";
+            case "enum":
+                return enumType(mysqlType);
+            default:
+                return ClickHouseTypeDefinitionConverter.fromMysqlType(mysqlType);
+        }
+    }
+
+    static String enumType(final String mysqlType)
+    {
+        final List<String> values = new ArrayList<>();
+        final Matcher matcher = QUOTED_VALUE.matcher(mysqlType);
+        while (matcher.find())
+        {
+            values.add(matcher.group(1).replace("''", "'"));
+        }
+
+        // MySQL stores invalid values as the empty string with index 0
+        final StringJoiner entries = new StringJoiner(", ");
+        if (!values.contains(""))
+        {
+            entries.add("'' = 0");
+        }
+        for (int i = 0; i < values.size(); i++)
+        {
+            entries.add("'" + values.get(i).replace("\\", "\\\\").replace("'", "\\'") + "' = " + (i + 1));
+        }
+        // The highest index is the number of values
+        return (values.size() <= Byte.MAX_VALUE ? "Enum8(" : "Enum16(") + entries + ")";
+    }
+
+    /**
+     * @return A rough estimate of the uncompressed size of a value of the given type
+     */
+    static double estimateBytes(final String type, final double averageLength, final long distinct)
+    {
+        if (type.startsWith("Nullable("))
+        {
+            return 1 + estimateBytes(unwrap(type), averageLength, distinct);
+        }
+        else if (type.startsWith("LowCardinality("))
+        {
+            // Only the dictionary index is stored per row
+            return distinct <= 256 ? 1 : distinct <= 65_536 ? 2 : 4;
+        }
+
+        final int paren = type.indexOf('(');
+        final String name = paren != -1 ? type.substring(0, paren) : type;
+        switch (name)
+        {
+            case "Int8":
+            case "UInt8":
+            case "Enum8":
+                return 1;
+            case "Int16":
+            case "UInt16":
+            case "Enum16":
+            case "Date":
+                return 2;
+            case "Int32":
+            case "UInt32":
+            case "Float32":
+            case "DateTime":
+            case "Date32":
+                return 4;
+            case "Int64":
+            case "UInt64":
+            case "Float64":
+            case "DateTime64":
+                return 8;
+            case "Decimal":
+                final Matcher matcher = DIGITS.matcher(type);
+                final int precision = matcher.find() ? Integer.parseInt(matcher.group(1)) : 38;
+                return precision <= 9 ? 4 : precision <= 18 ? 8 : precision <= 38 ? 16 : 32;
+            default:
+                // Length prefix and the data
+                return 1 + averageLength;
+        }
+    }
+
+    private static String unwrap(final String type)
+    {
+        return type.substring(type.indexOf('(') + 1, type.lastIndexOf(')'));
+    }
+
+    private static int indexOfAny(final String value, final char a, final char b)
+    {
+        final int ia = value.indexOf(a);
+        final int ib = value.indexOf(b);
+        return ia == -1 ? ib : ib == -1 ? ia : Math.min(ia, ib);
+    }
+
+    private static long toLong(final Object value)
+    {
+        return value != null ? ((Number) value).longValue() : 0;
+    }
+
+    private static long round(final double value)
+    {
+        return Math.round(value);
+    }
+}
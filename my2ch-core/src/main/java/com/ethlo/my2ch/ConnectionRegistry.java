@@ -0,0 +1,265 @@
+package com.ethlo.my2ch;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.ethlo.clackshack.ClackShack;
+import com.ethlo.clackshack.ClackShackImpl;
+import com.ethlo.my2ch.clickhouse.ClickHouseHttpClient;
+import com.ethlo.my2ch.config.MysqlConfig;
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+import com.zaxxer.hikari.metrics.MetricsTrackerFactory;
+
+/**
+ * Shares MySQL connection pools and ClickHouse clients between all tasks using the same server and credentials.
+ * <p>
+ * Every user holds a {@link Lease}, and a pool or client is closed when the last lease on it is closed. A MySQL pool is
+ * sized to the sum of the connections its leases ask for, capped by the configured maximum.
+ */
+public class ConnectionRegistry implements AutoCloseable
+{
+    private static final Logger logger = LoggerFactory.getLogger(ConnectionRegistry.class);
+
+    private final Integer maxPoolSize;
+    private final Duration connectionTimeout;
+    private final MetricsTrackerFactory metricsTrackerFactory;
+    private final Map<String, Entry<HikariDataSource>> dataSources = new LinkedHashMap<>();
+    private final Map<String, Entry<ClackShack>> clackShacks = new LinkedHashMap<>();
+    private final Map<String, Entry<ClickHouseHttpClient>> httpClients = new LinkedHashMap<>();
+
+    /**
+     * @param maxPoolSize The maximum number of connections per MySQL server and user, or null for no limit
+     */
+    public ConnectionRegistry(final Integer maxPoolSize)
+    {
+        this(maxPoolSize, null, null);
+    }
+
+    /**
+     * @param maxPoolSize           The maximum number of connections per MySQL server and user, or null for no limit
+     * @param connectionTimeout     How long to wait for a connection of a pool before failing, or null for the default of HikariCP
+     * @param metricsTrackerFactory Publishes the statistics of the MySQL pools, or null
+     */
+    public ConnectionRegistry(final Integer maxPoolSize, final Duration connectionTimeout, final MetricsTrackerFactory metricsTrackerFactory)
+    {
+        this.maxPoolSize = maxPoolSize;
+        this.connectionTimeout = connectionTimeout;
+        this.metricsTrackerFactory = metricsTrackerFactory;
+    }
+
+    /**
+     * @param connections The number of connections the caller uses concurrently
+     */
+    public synchronized Lease<HikariDataSource> dataSource(final MysqlConfig config, final int connections)
+    {
+        final String key = config.getUrl() + "|" + config.getUsername() + "|" + config.getPassword();
+        final Entry<HikariDataSource> entry = dataSources.computeIfAbsent(key, k -> new Entry<>(k, createDataSource(config), HikariDataSource::close));
+        entry.references++;
+        entry.demand += connections;
+        resize(entry);
+        return new Lease<>(entry.value, () -> release(dataSources, entry, connections));
+    }
+
+    public synchronized Lease<ClackShack> clackShack(final String url)
+    {
+        final Entry<ClackShack> entry = clackShacks.computeIfAbsent(url, k ->
+        {
+            logger.debug("Connecting to ClickHouse using URL {}", mask(url));
+            return new Entry<>(k, new ClackShackImpl(url), ConnectionRegistry::closeIfCloseable);
+        });
+        entry.references++;
+        return new Lease<>(entry.value, () -> release(clackShacks, entry, 0));
+    }
+
+    public synchronized Lease<ClickHouseHttpClient> httpClient(final String url)
+    {
+        final Entry<ClickHouseHttpClient> entry = httpClients.computeIfAbsent(url, k -> new Entry<>(k, new ClickHouseHttpClient(url), client ->
+        {
+        }));
+        entry.references++;
+        return new Lease<>(entry.value, () -> release(httpClients, entry, 0));
+    }
+
+    public synchronized List<Map<String, Object>> getStats()
+    {
+        final List<Map<String, Object>> result = new ArrayList<>();
+        for (final Entry<HikariDataSource> entry : dataSources.values())
+        {
+            final Map<String, Object> data = new LinkedHashMap<>();
+            data.put("type", "mysql");
+            data.put("name", entry.value.getPoolName());
+            data.put("references", entry.references);
+            data.put("max_pool_size", entry.value.getMaximumPoolSize());
+            final HikariPoolMXBean pool = entry.value.getHikariPoolMXBean();
+            if (pool != null)
+            {
+                data.put("active", pool.getActiveConnections());
+                data.put("idle", pool.getIdleConnections());
+                data.put("total", pool.getTotalConnections());
+                data.put("waiting", pool.getThreadsAwaitingConnection());
+            }
+            result.add(data);
+        }
+        for (final Entry<ClackShack> entry : clackShacks.values())
+        {
+            result.add(clientStats("clickhouse", entry));
+        }
+        for (final Entry<ClickHouseHttpClient> entry : httpClients.values())
+        {
+            result.add(clientStats("clickhouse-http", entry));
+        }
+        return result;
+    }
+
+    private static Map<String, Object> clientStats(final String type, final Entry<?> entry)
+    {
+        final Map<String, Object> data = new LinkedHashMap<>();
+        data.put("type", type);
+        data.put("name", mask(entry.key));
+        data.put("references", entry.references);
+        return data;
+    }
+
+    private HikariDataSource createDataSource(final MysqlConfig config)
+    {
+        logger.debug("Connecting to MySQL using {}", mask(config.getUrl()));
+        final HikariConfig hikariConfig = new HikariConfig();
+        hikariConfig.setPoolName("my2ch-mysql-" + config.getHost() + ":" + config.getPort() + "-" + dataSources.size());
+        hikariConfig.setJdbcUrl(config.getUrl());
+        hikariConfig.setUsername(config.getUsername());
+        hikariConfig.setPassword(config.getPassword());
+        hikariConfig.setKeepaliveTime(Duration.ofMinutes(1).toMillis());
+        hikariConfig.setMinimumIdle(0);
+        hikariConfig.setMaximumPoolSize(1);
+        if (connectionTimeout != null)
+        {
+            hikariConfig.setConnectionTimeout(connectionTimeout.toMillis());
+        }
+        if (metricsTrackerFactory != null)
+        {
+            hikariConfig.setMetricsTrackerFactory(metricsTrackerFactory);
+        }
+        hikariConfig.setLeakDetectionThreshold(Duration.ofMinutes(30).toMillis());
+        return new HikariDataSource(hikariConfig);
+    }
+
+    private void resize(final Entry<HikariDataSource> entry)
+    {
+        final int size = Math.max(1, maxPoolSize != null ? Math.min(maxPoolSize, entry.demand) : entry.demand);
+        if (entry.value.getMaximumPoolSize() != size)
+        {
+            logger.debug("Resizing MySQL pool {} to {} connections", entry.value.getPoolName(), size);
+            entry.value.getHikariConfigMXBean().setMaximumPoolSize(size);
+        }
+    }
+
+    private synchronized <T> void release(final Map<String, Entry<T>> entries, final Entry<T> entry, final int connections)
+    {
+        entry.references--;
+        entry.demand -= connections;
+        if (entry.references == 0)
+        {
+            entries.remove(entry.key);
+            entry.closer.accept(entry.value);
+        }
+        else if (entry.value instanceof HikariDataSource)
+        {
+            @SuppressWarnings("unchecked") final Entry<HikariDataSource> dataSource = (Entry<HikariDataSource>) entry;
+            resize(dataSource);
+        }
+    }
+
+    private static void closeIfCloseable(final Object client)
+    {
+        if (client instanceof AutoCloseable)
+        {
+            try
+            {
+                ((AutoCloseable) client).close();
+            }
+            catch (Exception exc)
+            {
+                logger.warn("Error closing {}: {}", client, exc.getMessage());
+            }
+        }
+    }
+
+    private static String mask(final String url)
+    {
+        final int schemeEnd = url.indexOf("://");
+        final int at = url.indexOf('@');
+        if (schemeEnd == -1 || at == -1)
+        {
+            return url;
+        }
+        final String userInfo = url.substring(schemeEnd + 3, at);
+        final int separator = userInfo.indexOf(':');
+        return separator == -1 ? url : url.substring(0, schemeEnd + 3) + userInfo.substring(0, separator) + ":***" + url.substring(at);
+    }
+
+    @Override
+    public synchronized void close()
+    {
+        dataSources.values().forEach(entry -> entry.closer.accept(entry.value));
+        clackShacks.values().forEach(entry -> entry.closer.accept(entry.value));
+        dataSources.clear();
+        clackShacks.clear();
+        httpClients.clear();
+    }
+
+    private static class Entry<T>
+    {
+        private final String key;
+        private final T value;
+        private final Consumer<T> closer;
+        private int references;
+        private int demand;
+
+        Entry(final String key, final T value, final Consumer<T> closer)
+        {
+            this.key = key;
+            this.value = value;
+            this.closer = closer;
+        }
+    }
+
+    /**
+     * A reference to a shared pool or client, to be closed when no longer used
+     */
+    public static class Lease<T> implements AutoCloseable
+    {
+        private final T value;
+        private final Runnable release;
+        private boolean released;
+
+        private Lease(final T value, final Runnable release)
+        {
+            this.value = value;
+            this.release = release;
+        }
+
+        public T get()
+        {
+            return value;
+        }
+
+        @Override
+        public synchronized void close()
+        {
+            if (!released)
+            {
+                released = true;
+                release.run();
+            }
+        }
+    }
+}
@@ -3,6 +3,7 @@ package com.ethlo.my2ch;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.time.Duration;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.LinkedHashMap;
@@ -16,7 +17,6 @@ import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
 
 import com.ethlo.clackshack.ClackShack;
-import com.ethlo.clackshack.ClackShackImpl;
 import com.ethlo.clackshack.model.ResultSet;
 import com.ethlo.clackshack.model.Row;
 import com.ethlo.my2ch.config.ClickHouseConfig;
@@ -31,6 +31,15 @@ public class DdlManagerImpl implements DdlManager
     public static final String MIGRATIONS_PATH_NAME = "migrations";
     private static final Logger logger = LoggerFactory.getLogger(DdlManagerImpl.class);
 
+    private final ConnectionRegistry connectionRegistry;
+    private final TransferObserver observer;
+
+    public DdlManagerImpl(final ConnectionRegistry connectionRegistry, final TransferObserver observer)
+    {
+        this.connectionRegistry = connectionRegistry;
+        this.observer = observer;
+    }
+
     @Override
     public void run(final Path dir, final LifeCycle lifeCycle)
     {
@@ -45,7 +54,16 @@ public class DdlManagerImpl implements DdlManager
 
         final List<Ddl> ddls = My2chConfigLoader.getDDLs(migrationsForAliasPath);
         final ClickHouseConfig clickhouseCfg = config.getTarget().getClickhouse();
-        final ClackShack clackShack = new ClackShackImpl(clickhouseCfg.getUrl());
+        final long started = System.nanoTime();
+        try (final ConnectionRegistry.Lease<ClackShack> lease = connectionRegistry.clackShack(clickhouseCfg.getUrl()))
+        {
+            run(lease.get(), alias, ddls, lifeCycle);
+        }
+        observer.phaseCompleted(alias, TransferPhase.MIGRATIONS, Duration.ofNanos(System.nanoTime() - started));
+    }
+
+    private void run(final ClackShack clackShack, final String alias, final List<Ddl> ddls, final LifeCycle lifeCycle)
+    {
         for (final Ddl ddl : ddls)
         {
             if (ddl.getLifecycle() == lifeCycle)
@@ -0,0 +1,116 @@
+package com.ethlo.my2ch;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.StringJoiner;
+
+import org.roaringbitmap.longlong.LongIterator;
+import org.roaringbitmap.longlong.Roaring64NavigableMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import com.ethlo.clackshack.ClackShack;
+import com.ethlo.clackshack.QueryOptions;
+import com.ethlo.my2ch.clickhouse.ClickHouseHttpClient;
+import com.ethlo.my2ch.config.Cdc;
+import com.ethlo.my2ch.config.DeleteMode;
+import com.ethlo.my2ch.config.DeleteSync;
+
+/**
+ * Deletes the rows in ClickHouse whose key is no longer in the source. The keys of both sides are streamed into compressed
+ * bitmaps, so that hundreds of millions of keys fit in a few hundred MB, and the keys only in ClickHouse are deleted in batches.
+ */
+class DeletePropagator
+{
+    private static final Logger logger = LoggerFactory.getLogger(DeletePropagator.class);
+
+    private final JdbcTemplate streamingTemplate;
+    private final ClickHouseHttpClient httpClient;
+    private final ClackShack clackShack;
+    private final DeleteSync settings;
+    private final String key;
+
+    /**
+     * @param streamingTemplate A template that streams the result set from MySQL instead of buffering it
+     */
+    DeletePropagator(final JdbcTemplate streamingTemplate, final ClickHouseHttpClient httpClient, final ClackShack clackShack, final DeleteSync settings, final String key)
+    {
+        this.streamingTemplate = streamingTemplate;
+        this.httpClient = httpClient;
+        this.clackShack = clackShack;
+        this.settings = settings;
+        this.key = key;
+    }
+
+    /**
+     * @param sourceQuery      The complete source query
+     * @param targetDbAndTable The ClickHouse table
+     * @param tombstones       Whether to insert rows with a negative sign and a higher version instead of deleting
+     * @return The number of deleted keys
+     */
+    long run(final String sourceQuery, final String targetDbAndTable, final boolean tombstones)
+    {
+        // Read the target first, so rows added to both sides in the meantime are never taken for deleted
+        final String targetRelation = tombstones ? "(SELECT " + key + " FROM " + targetDbAndTable + " FINAL WHERE " + Cdc.SIGN_COLUMN + " > 0)" : targetDbAndTable;
+        final Roaring64NavigableMap deleted = new Roaring64NavigableMap();
+        httpClient.query("SELECT toInt64(" + key + ") FROM " + targetRelation + " FORMAT RowBinary", body ->
+        {
+            final byte[] value = new byte[Long.BYTES];
+            final ByteBuffer buffer = ByteBuffer.wrap(value).order(ByteOrder.LITTLE_ENDIAN);
+            while (body.readNBytes(value, 0, Long.BYTES) == Long.BYTES)
+            {
+                deleted.addLong(buffer.getLong(0));
+            }
+        });
+        deleted.runOptimize();
+
+        final Roaring64NavigableMap source = new Roaring64NavigableMap();
+        streamingTemplate.query("SELECT " + key + " FROM (" + sourceQuery + ") my2ch_src", rs ->
+        {
+            source.addLong(rs.getLong(1));
+        });
+        source.runOptimize();
+        logger.debug("Comparing {} keys in the source with {} keys in {} ({} + {} bytes)",
+                source.getLongCardinality(), deleted.getLongCardinality(), targetDbAndTable, source.serializedSizeInBytes(), deleted.serializedSizeInBytes());
+
+        if (source.isEmpty() && !deleted.isEmpty())
+        {
+            logger.warn("Not deleting all {} rows of {}, as the source returned no keys", deleted.getLongCardinality(), targetDbAndTable);
+            return 0;
+        }
+
+        deleted.andNot(source);
+        final long count = deleted.getLongCardinality();
+        final LongIterator keys = deleted.getLongIterator();
+        while (keys.hasNext())
+        {
+            final StringJoiner batch = new StringJoiner(", ");
+            for (int i = 0; i < settings.getBatchSize() && keys.hasNext(); i++)
+            {
+                batch.add(Long.toString(keys.next()));
+            }
+            delete(targetDbAndTable, key + " IN (" + batch + ")", tombstones);
+        }
+
+        logger.info("Deleted {} rows from {} that are no longer in the source", count, targetDbAndTable);
+        return count;
+    }
+
+    private void delete(final String targetDbAndTable, final String predicate, final boolean tombstones)
+    {
+        if (tombstones)
+        {
+            clackShack.insert("INSERT INTO " + targetDbAndTable + " SELECT * REPLACE (-1 AS " + Cdc.SIGN_COLUMN + ", " + Cdc.VERSION_COLUMN + " + 1 AS " + Cdc.VERSION_COLUMN + ") "
+                    + "FROM " + targetDbAndTable + " FINAL WHERE " + Cdc.SIGN_COLUMN + " > 0 AND " + predicate, QueryOptions.create());
+        }
+        else if (settings.getMode() == DeleteMode.LIGHTWEIGHT)
+        {
+            clackShack.ddl("DELETE FROM " + targetDbAndTable + " WHERE " + predicate);
+        }
+        else
+        {
+            clackShack.ddl("ALTER TABLE " + targetDbAndTable + " DELETE WHERE " + predicate);
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package com.ethlo.my2ch;
+
+/**
+ * A half-open range of key values, from (inclusive) to (exclusive).
+ */
+public class KeyRange
+{
+    private final long from;
+    private final long to;
+
+    public KeyRange(final long from, final long to)
+    {
+        this.from = from;
+        this.to = to;
+    }
+
+    public long getFrom()
+    {
+        return from;
+    }
+
+    public long getTo()
+    {
+        return to;
+    }
+
+    public long size()
+    {
+        return to - from;
+    }
+
+    public String toPredicate(final String column)
+    {
+        return column + " >= " + from + " AND " + column + " < " + to;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "[" + from + ", " + to + ")";
+    }
+}
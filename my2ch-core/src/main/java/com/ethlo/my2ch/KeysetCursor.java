@@ -0,0 +1,103 @@
+package com.ethlo.my2ch;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * The key of the last row transferred by a batched incremental run, as SQL literals of a composite key. Comparing the whole
+ * key, rather than just the watermark column, splits rows sharing a timestamp correctly between batches.
+ */
+class KeysetCursor
+{
+    private static final ObjectMapper mapper = new ObjectMapper();
+
+    private final String watermark;
+    private final List<String> literals;
+
+    /**
+     * @param watermark The watermark stored with this cursor
+     * @param literals  The value of each key column, as an SQL literal
+     */
+    KeysetCursor(final String watermark, final List<String> literals)
+    {
+        this.watermark = watermark;
+        this.literals = literals;
+    }
+
+    String getWatermark()
+    {
+        return watermark;
+    }
+
+    /**
+     * @return A predicate matching the rows ordered after this key
+     */
+    String after(final List<String> columns)
+    {
+        return compare(columns, ">", ">");
+    }
+
+    /**
+     * @return A predicate matching the rows ordered up to and including this key
+     */
+    String upTo(final List<String> columns)
+    {
+        return compare(columns, "<", "<=");
+    }
+
+    /**
+     * Expands the row comparison into ORs of equal prefixes, which MySQL can resolve with a range scan on the key
+     */
+    private String compare(final List<String> columns, final String operator, final String lastOperator)
+    {
+        final List<String> terms = new ArrayList<>(columns.size());
+        for (int i = 0; i < columns.size(); i++)
+        {
+            final StringBuilder term = new StringBuilder();
+            for (int k = 0; k < i; k++)
+            {
+                term.append(columns.get(k)).append(" = ").append(literals.get(k)).append(" AND ");
+            }
+            term.append(columns.get(i)).append(i == columns.size() - 1 ? " " + lastOperator + " " : " " + operator + " ").append(literals.get(i));
+            terms.add(columns.size() > 1 ? "(" + term + ")" : term.toString());
+        }
+        return "(" + String.join(" OR ", terms) + ")";
+    }
+
+    String toJson()
+    {
+        final Map<String, Object> state = new LinkedHashMap<>();
+        state.put("watermark", watermark);
+        state.put("key", literals);
+        try
+        {
+            return mapper.writeValueAsString(state);
+        }
+        catch (JsonProcessingException exc)
+        {
+            throw new IllegalStateException(exc);
+        }
+    }
+
+    static Optional<KeysetCursor> parse(final String value)
+    {
+        try
+        {
+            final JsonNode state = mapper.readTree(value);
+            final List<String> literals = new ArrayList<>();
+            state.path("key").forEach(literal -> literals.add(literal.asText()));
+            return Optional.of(new KeysetCursor(state.path("watermark").asText(), literals));
+        }
+        catch (JsonProcessingException exc)
+        {
+            return Optional.empty();
+        }
+    }
+}
@@ -20,12 +20,32 @@ package com.ethlo.my2ch;
  * #L%
  */
 
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
 import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
 import java.util.Collections;
-import java.util.LinkedList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Function;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -34,83 +54,161 @@ import javax.validation.Valid;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
 import org.springframework.util.Assert;
-import org.springframework.util.StringUtils;
 
 import com.ethlo.clackshack.ClackShack;
-import com.ethlo.clackshack.ClackShackImpl;
 import com.ethlo.clackshack.QueryOptions;
 import com.ethlo.clackshack.model.DataTypes;
 import com.ethlo.clackshack.model.QueryProgress;
 import com.ethlo.clackshack.model.ResultSet;
 import com.ethlo.clackshack.util.IOUtil;
+import com.ethlo.my2ch.cdc.BinlogChangeCapture;
+import com.ethlo.my2ch.clickhouse.ClickHouseHttpClient;
+import com.ethlo.my2ch.config.Batching;
+import com.ethlo.my2ch.config.Cdc;
+import com.ethlo.my2ch.config.ChangeProbe;
+import com.ethlo.my2ch.config.Chunking;
 import com.ethlo.my2ch.config.ClickHouseConfig;
+import com.ethlo.my2ch.config.DeleteMode;
+import com.ethlo.my2ch.config.DeleteSync;
 import com.ethlo.my2ch.config.MysqlConfig;
+import com.ethlo.my2ch.config.ReadMode;
+import com.ethlo.my2ch.config.Reconcile;
 import com.ethlo.my2ch.config.Source;
+import com.ethlo.my2ch.config.StateConfig;
 import com.ethlo.my2ch.config.Target;
 import com.ethlo.my2ch.config.TransferConfig;
-import com.zaxxer.hikari.HikariConfig;
+import com.ethlo.my2ch.config.TransferEngine;
+import com.ethlo.my2ch.config.TypeOptimization;
+import com.ethlo.my2ch.state.StateStore;
+import com.ethlo.my2ch.state.StateStores;
 import com.zaxxer.hikari.HikariDataSource;
 
 public class My2ch implements AutoCloseable
 {
     private static final String statsQueryTemplate = IOUtil.readClasspath("stats_query.sql");
     private static final Logger logger = LoggerFactory.getLogger(My2ch.class);
+    private static final String WATERMARK_KEY = "watermark";
+    private static final String PROBE_KEY = "probe";
+    private static final int ER_UNKNOWN_SYSTEM_VARIABLE = 1193;
+    private static final String CURSOR_KEY = "cursor";
+    private static final Duration MUTATION_TIMEOUT = Duration.ofMinutes(10);
+    private static final int DEDUPLICATION_WINDOW = 1000;
+    private static final Pattern NUMBER = Pattern.compile("-?\\d+(\\.\\d+)?");
+    private static final Pattern WHERE = Pattern.compile("\\bwhere\\b", Pattern.CASE_INSENSITIVE);
+    private static final Pattern NON_MERGEABLE = Pattern.compile("\\b(group\\s+by|distinct|union|having|limit)\\b|\\bover\\s*\\(", Pattern.CASE_INSENSITIVE);
     private final NamedParameterJdbcTemplate tpl;
     private final ClackShack clackShack;
     private final TransferConfig config;
-    private final HikariDataSource dataSource;
+    private final ClickHouseHttpClient httpClient;
+    private final JdbcTemplate streamingTemplate;
+    private final ConnectionRegistry ownedRegistry;
+    private final List<ConnectionRegistry.Lease<?>> leases = new ArrayList<>();
+    private final StreamingTransfer streamingTransfer;
+    private final StateStore stateStore;
+    private final SourceSchema sourceSchema;
+    private final SourceThrottle throttle;
+    private final ClickHouseSettings settings;
+    private volatile TransferObserver observer = TransferObserver.NOOP;
+    private String mysqlDbName;
+    private boolean engineDatabaseCreated;
+    private boolean pushdownVerified;
+    private boolean strictNulls;
 
     public My2ch(@Valid final TransferConfig config)
     {
-        final MysqlConfig mysqlConfig = config.getSource().getMysql();
-        final String mysqlUrl = mysqlConfig.getUrl();
-        logger.debug("Connecting to MySQL using {}", mysqlUrl);
-        final HikariConfig hikariConfig = new HikariConfig();
-        hikariConfig.setJdbcUrl(mysqlUrl);
-        hikariConfig.setUsername(mysqlConfig.getUsername());
-        hikariConfig.setPassword(mysqlConfig.getPassword());
-        hikariConfig.setKeepaliveTime(Duration.ofMinutes(1).toMillis());
-        hikariConfig.setMaximumPoolSize(1);
-        hikariConfig.setLeakDetectionThreshold(Duration.ofMinutes(30).toMillis());
-
-        this.dataSource = new HikariDataSource(hikariConfig);
+        this(config, new ConnectionRegistry(null), true);
+    }
+
+    public My2ch(@Valid final TransferConfig config, final ConnectionRegistry connectionRegistry)
+    {
+        this(config, connectionRegistry, false);
+    }
+
+    private My2ch(final TransferConfig config, final ConnectionRegistry connectionRegistry, final boolean ownsRegistry)
+    {
+        this.ownedRegistry = ownsRegistry ? connectionRegistry : null;
+
+        final HikariDataSource dataSource = lease(connectionRegistry.dataSource(config.getSource().getMysql(), getPoolSize(config.getSource())));
         this.tpl = new NamedParameterJdbcTemplate(dataSource);
-        tpl.queryForObject("SELECT 1", Collections.emptyMap(), Long.class);
-        logger.debug("Connected to MySQL");
 
         final ClickHouseConfig chCfg = config.getTarget().getClickhouse();
-        logger.debug("Connecting to ClickHouse using URL {}", chCfg.getUrl());
-        this.clackShack = new ClackShackImpl(chCfg.getUrl());
-        this.clackShack.query("SELECT 1");
-        logger.debug("Connected to ClickHouse");
+        this.clackShack = lease(connectionRegistry.clackShack(chCfg.getUrl()));
 
+        this.streamingTemplate = new JdbcTemplate(dataSource);
+        // Makes MySQL Connector/J stream the result set row by row instead of buffering all of it
+        streamingTemplate.setFetchSize(Integer.MIN_VALUE);
+        this.httpClient = lease(connectionRegistry.httpClient(chCfg.getUrl()));
+        this.settings = new ClickHouseSettings(config.getTarget().getSettings());
+        this.streamingTransfer = new StreamingTransfer(streamingTemplate, httpClient, config.getSource().getStreaming(), settings.getQuery());
         this.config = config;
+
+        try
+        {
+            tpl.queryForObject("SELECT 1", Collections.emptyMap(), Long.class);
+            logger.debug("Connected to MySQL");
+            clackShack.query("SELECT 1");
+            logger.debug("Connected to ClickHouse");
+
+            this.stateStore = StateStores.create(config.getState(), clackShack);
+            if (config.getState().getStore() == StateConfig.StoreType.MEMORY && config.getSource().isIncremental())
+            {
+                logger.warn("The state of incremental alias {} is kept in memory only, so every new process starts with a SELECT MAX on the target table. Use the clickhouse or file state store", config.getAlias());
+            }
+        }
+        catch (RuntimeException exc)
+        {
+            close();
+            throw exc;
+        }
+        this.sourceSchema = new SourceSchema(tpl, stateStore, config.getAlias());
+        this.throttle = new SourceThrottle(tpl.getJdbcTemplate(), config.getSource().getThrottle(), config.getSource().getMysql(), config.getAlias());
     }
 
-    private String getClickHouseTableDefinition(final String tmpTableName, final String query, final String engineDefinition, final String clickHouseTmpDbAndTable)
+    private <T> T lease(final ConnectionRegistry.Lease<T> lease)
     {
-        tpl.update("DROP TABLE IF EXISTS " + tmpTableName, Collections.emptyMap());
+        leases.add(lease);
+        return lease.get();
+    }
 
-        tpl.update("CREATE TEMPORARY TABLE `" + tmpTableName + "` AS " + query + " LIMIT 0", Collections.emptyMap());
+    private static int getPoolSize(final Source source)
+    {
+        // Each concurrently streamed chunk holds a MySQL connection for the duration of its query
+        final Chunking chunking = source.getChunking();
+        final int transferConnections = source.getEngine() == TransferEngine.STREAMING && chunking != null ? chunking.getParallelism() : 1;
+        // The throttle must be able to probe the source while all chunks are running
+        return source.getThrottle() != null ? transferConnections + 1 : transferConnections;
+    }
 
-        final StringBuilder s = new StringBuilder();
-        s.append("CREATE TABLE ").append(clickHouseTmpDbAndTable).append(" (");
-        final List<String> columns = new LinkedList<>();
-        tpl.query("DESC " + tmpTableName, row ->
+    private String getClickHouseTableDefinition(final String query, final String engineDefinition, final String clickHouseTmpDbAndTable)
+    {
+        final List<SourceColumn> columns = sourceSchema.getColumns(query);
+        final Target target = config.getTarget();
+        final TypeOptimization typeOptimization = target.getTypeOptimization();
+        if (typeOptimization == null && target.getCodecSelection() == null)
         {
-            final String columnName = row.getString(1);
-            final String mysqlType = row.getString(2);
-            final String nullable = row.getString(3);
-            final boolean isNullable = "YES".equalsIgnoreCase(nullable);
-            final String dataType = ClickHouseTypeDefinitionConverter.fromMysqlType(mysqlType, isNullable);
-            columns.add(columnName + " " + dataType);
-        });
-        s.append(StringUtils.collectionToDelimitedString(columns, ",\n"));
-        s.append(") ");
-        s.append(engineDefinition);
-        return s.toString();
+            return ClickHouseTableDefinition.create(clickHouseTmpDbAndTable, columns, engineDefinition);
+        }
+
+        // Incremental, partitioned and CDC transfers keep writing to the table, so a column without nulls today may get some later
+        final Source source = config.getSource();
+        final boolean rebuiltEveryRun = !source.isIncremental() && source.getPartitioning() == null && source.getCdc() == null;
+        // Rows with nulls may still be added between the sample and the insert, which must then fail rather than store defaults
+        strictNulls = typeOptimization != null && rebuiltEveryRun;
+        final Map<String, String> columnTypes = typeOptimization != null
+                ? new ColumnTypeOptimizer(tpl, typeOptimization, config.getAlias()).optimize(query, columns, rebuiltEveryRun)
+                : ClickHouseTableDefinition.getColumnTypes(columns);
+
+        if (target.getCodecSelection() != null)
+        {
+            final Map<String, String> codecs = new CodecAdvisor(tpl, clackShack, stateStore, config).advise(query, columnTypes);
+            codecs.forEach((column, codec) -> columnTypes.computeIfPresent(column, (c, type) -> type + " " + codec));
+        }
+        return ClickHouseTableDefinition.create(clickHouseTmpDbAndTable, columnTypes, engineDefinition);
     }
 
     private ResultSet fetchStorageStats(final String databaseName, final String tableName)
@@ -126,17 +224,28 @@ public class My2ch implements AutoCloseable
         tpl.update("DROP VIEW IF EXISTS " + viewName, Collections.emptyMap());
     }
 
-    private String createView(final String tableName, final String query, final String rangeClause)
+    private String createView(final String tableName, final String query)
     {
         final String viewName = "tmp_my2ch_" + tableName;
-        tpl.update("CREATE OR REPLACE VIEW " + viewName + " AS " + query + (rangeClause != null ? " " + rangeClause : ""), Collections.emptyMap());
+        tpl.update("CREATE OR REPLACE VIEW " + viewName + " AS " + query, Collections.emptyMap());
         return viewName;
     }
 
-    private long transferData(final String query, final String targetDb, final String targetTable, final Function<QueryProgress, Boolean> listener)
+    private long transferData(final String query, final String targetTable, final String dedupToken, final Function<QueryProgress, Boolean> listener)
     {
+        final String targetDb = config.getTarget().getClickhouse().getDb();
         logger.debug("Transferring data from MySQL query to Clickhouse table {}.{}", targetDb, targetTable);
-        final String transferQuery = "insert into " + targetDb + "." + targetTable + " " + query;
+        final Map<String, String> insertSettings = new LinkedHashMap<>();
+        if (dedupToken != null)
+        {
+            insertSettings.put("insert_deduplication_token", dedupToken);
+        }
+        if (strictNulls)
+        {
+            insertSettings.put("insert_null_as_default", "0");
+        }
+        final String settingsClause = settings.clause(insertSettings);
+        final String transferQuery = "insert into " + targetDb + "." + targetTable + " " + settingsClause + query;
         logger.debug("Transfer query: {}", transferQuery);
         final AtomicLong max = new AtomicLong();
         clackShack.insert(transferQuery, QueryOptions.create().progressListener(queryProgress ->
@@ -148,92 +257,1070 @@ public class My2ch implements AutoCloseable
         return max.get();
     }
 
-    private String setupView(final TransferConfig config, final boolean isIncremental, final boolean tableExists)
+    /**
+     * Prepares the ClickHouse table for the transfer, either by looking up the watermark of the last incremental transfer,
+     * or by replacing the table with an empty one for a full transfer
+     *
+     * @return The source query, limited to the rows after the watermark if an incremental transfer
+     */
+    private String prepareTarget(final TransferConfig config, final boolean isIncremental, final boolean tableExists)
     {
-        final Source source = config.getSource();
         final Target target = config.getTarget();
         final String targetDbAndTable = target.getClickhouse().getDb() + "." + config.getAlias();
 
         if (isIncremental && tableExists)
         {
-            // Find current max
-            final ResultSet maxResult = clackShack.query("SELECT MAX(" + target.getPrimaryKey() + ") FROM " + targetDbAndTable);
-            final long max = maxResult.get(0, 0, Number.class).longValue();
-            logger.debug("Current max value of column {} in Clickhouse table '{}': {}", target.getPrimaryKey(), config.getAlias(), max);
+            final String watermarkColumn = getWatermarkColumn();
+            final String max = stateStore.get(config.getAlias(), WATERMARK_KEY).orElseGet(() ->
+            {
+                // No watermark recorded yet, so find the current max
+                final ResultSet maxResult = clackShack.query("SELECT MAX(" + watermarkColumn + ") FROM " + targetDbAndTable);
+                return toWatermark(maxResult.get(0, 0, Object.class));
+            });
+            logger.debug("Current max value of column {} in Clickhouse table '{}': {}", watermarkColumn, config.getAlias(), max);
 
             final String rangeClauseTpl = config.getSource().getRangeClause();
-            final String rangeClause = rangeClauseTpl != null ? rangeClauseTpl.replace("{max_primary_key}", "" + max) : null;
-            return createView(config.getAlias(), source.getQuery(), rangeClause);
+            final Optional<KeysetCursor> cursor = getCursor().filter(c -> c.getWatermark().equals(max));
+            if (rangeClauseTpl != null && cursor.isPresent())
+            {
+                // Continues after the last row of the last batch, even if it ended between rows sharing the watermark
+                return restrict(getSourceQuery(), cursor.get().after(getBatchKey()));
+            }
+            else if (rangeClauseTpl != null)
+            {
+                return getSourceQuery() + " " + rangeClauseTpl.replace("{max_primary_key}", max);
+            }
+
+            // Rows updated again since the last transfer are inserted again, and the engine keeps the latest version
+            return restrict(getSourceQuery(), watermarkColumn + " >= " + subtractLookback(max));
         }
         else
         {
+            // The watermark no longer describes the table if this transfer fails half-way
+            stateStore.remove(config.getAlias(), WATERMARK_KEY);
+            stateStore.remove(config.getAlias(), CURSOR_KEY);
+
             final String tmpTableName = "tmp_" + config.getAlias();
             final String clickHouseTmpDbAndTable = target.getClickhouse().getDb() + "." + tmpTableName;
-            clackShack.ddl("DROP TABLE IF EXISTS " + clickHouseTmpDbAndTable);
+            ddl("DROP TABLE IF EXISTS " + clickHouseTmpDbAndTable);
 
-            final String tableDef = getClickHouseTableDefinition(tmpTableName, source.getQuery(), target.getEngineDefinition(), clickHouseTmpDbAndTable);
+            final String tableDef = getClickHouseTableDefinition(getSourceQuery(), getEngineDefinition(), clickHouseTmpDbAndTable);
             logger.debug("Clickhouse table definition: {}", tableDef);
 
             logger.debug("Creating clickhouse table {}", clickHouseTmpDbAndTable);
-            clackShack.ddl(tableDef);
+            ddl(tableDef);
+            enableDeduplication(clickHouseTmpDbAndTable);
 
             if (clackShack.query("EXISTS TABLE " + targetDbAndTable).get(0, 0, Short.class) > 0)
             {
                 // Table exists, so do an atomic exchange
-                clackShack.ddl("EXCHANGE TABLES " + targetDbAndTable + " AND " + clickHouseTmpDbAndTable);
+                ddl("EXCHANGE TABLES " + targetDbAndTable + " AND " + clickHouseTmpDbAndTable);
             }
             else
             {
                 // It does not exist, so we simply rename it
-                clackShack.ddl("RENAME TABLE " + clickHouseTmpDbAndTable + " TO " + targetDbAndTable);
+                ddl("RENAME TABLE " + clickHouseTmpDbAndTable + " TO " + targetDbAndTable);
             }
 
-            return createView(config.getAlias(), source.getQuery(), null);
+            if (config.getSource().getUpdateColumn() != null)
+            {
+                ddl("CREATE VIEW IF NOT EXISTS " + targetDbAndTable + "_latest AS SELECT * FROM " + targetDbAndTable + " FINAL");
+            }
+            return getSourceQuery();
+        }
+    }
+
+    /**
+     * Replicated tables deduplicate inserts by default, while other MergeTree tables need a deduplication window
+     */
+    private void enableDeduplication(final String dbAndTable)
+    {
+        final String engineDefinition = getEngineDefinition();
+        if (config.getSource().isResumable() && engineDefinition.contains("MergeTree") && !engineDefinition.contains("Replicated"))
+        {
+            ddl("ALTER TABLE " + dbAndTable + " MODIFY SETTING non_replicated_deduplication_window = " + DEDUPLICATION_WINDOW);
         }
     }
 
+    private String getEngineDefinition()
+    {
+        final String engineDefinition = config.getTarget().getEngineDefinition();
+        if (engineDefinition != null)
+        {
+            return engineDefinition;
+        }
+        final String updateColumn = config.getSource().getUpdateColumn();
+        Assert.notNull(updateColumn, "No engine_definition for " + config.getAlias());
+        return "ENGINE = ReplacingMergeTree(" + updateColumn + ") ORDER BY " + config.getTarget().getPrimaryKey();
+    }
+
+    /**
+     * @return The column that the watermark of incremental transfers is the max value of
+     */
+    private String getWatermarkColumn()
+    {
+        final String updateColumn = config.getSource().getUpdateColumn();
+        return updateColumn != null ? updateColumn : config.getTarget().getPrimaryKey();
+    }
+
+    /**
+     * @return The watermark minus the lookback, as a literal. Numeric watermarks are taken as seconds
+     */
+    private String subtractLookback(final String watermark)
+    {
+        final Duration lookback = config.getSource().getLookback();
+        if (NUMBER.matcher(watermark).matches())
+        {
+            return new BigDecimal(watermark).subtract(BigDecimal.valueOf(lookback.toSeconds())).toPlainString();
+        }
+        final LocalDateTime dateTime = watermark.length() == 10 ? LocalDate.parse(watermark).atStartOfDay() : LocalDateTime.parse(watermark.replace(' ', 'T'));
+        return toLiteral(dateTime.minus(lookback));
+    }
+
+    /**
+     * @return The query limited to the rows matching the predicate. When ClickHouse reads the source table directly, the
+     * predicate is added to the WHERE clause of the query itself, so that ClickHouse can push it down to MySQL
+     */
+    private String restrict(final String query, final String predicate)
+    {
+        if (isReadingTable())
+        {
+            return addPredicate(query, getSourceQuery().length(), predicate);
+        }
+        return "SELECT * FROM (" + query + ") my2ch_src WHERE " + predicate;
+    }
+
+    /**
+     * Adds a predicate to the flat WHERE clause of a query reading a table, keeping any OR of the range-clause apart from it
+     *
+     * @param from The index after the table, where the WHERE clause may start
+     */
+    static String addPredicate(final String query, final int from, final String predicate)
+    {
+        final Matcher matcher = WHERE.matcher(query);
+        if (!matcher.find(from))
+        {
+            return query + " WHERE " + predicate;
+        }
+        return query.substring(0, matcher.end()) + " (" + query.substring(matcher.end()).trim() + ") AND (" + predicate + ")";
+    }
+
+    /**
+     * @return Whether ClickHouse reads the source table directly, rather than a view
+     */
+    private boolean isReadingTable()
+    {
+        final Source source = config.getSource();
+        return source.getEngine() == TransferEngine.MYSQL_ENGINE && source.getReadMode() != ReadMode.VIEW;
+    }
+
+    /**
+     * @return The configured query, with the version and sign columns added if change capture is enabled
+     */
+    private String getSourceQuery()
+    {
+        final String query = config.getSource().getQuery();
+        if (config.getSource().getCdc() == null)
+        {
+            return query;
+        }
+
+        // Snapshot rows have version 0, so any captured change to the same key supersedes them
+        return "SELECT my2ch_cdc.*, CAST(1 AS SIGNED) AS " + Cdc.SIGN_COLUMN + ", CAST(0 AS UNSIGNED) AS " + Cdc.VERSION_COLUMN + " FROM (" + query + ") my2ch_cdc";
+    }
+
+    /**
+     * @return A change capture for this alias, sharing the connections of this instance
+     */
+    public BinlogChangeCapture createChangeCapture()
+    {
+        Assert.notNull(config.getSource().getCdc(), "No cdc configuration for " + config.getAlias());
+        return new BinlogChangeCapture(config, tpl, clackShack, httpClient);
+    }
+
+    public void setObserver(final TransferObserver observer)
+    {
+        this.observer = observer;
+    }
+
+    private void phaseCompleted(final TransferPhase phase, final long startedNanos)
+    {
+        observer.phaseCompleted(config.getAlias(), phase, Duration.ofNanos(System.nanoTime() - startedNanos));
+    }
+
     public Map<String, Object> getStats()
     {
+        final long started = System.nanoTime();
         final ResultSet result = fetchStorageStats(config.getTarget().getClickhouse().getDb(), config.getAlias());
+        phaseCompleted(TransferPhase.STATS, started);
         return !result.isEmpty() ? result.asMap().iterator().next() : Collections.emptyMap();
     }
 
-    public long run(final Function<QueryProgress, Boolean> progressListener)
+    public long run(final Function<TransferProgress, Boolean> progressListener)
+    {
+        final long started = System.nanoTime();
+        final AtomicReference<TransferProgress> last = new AtomicReference<>(new TransferProgress(0, 0));
+        try
+        {
+            final long transferred = transfer(progress ->
+            {
+                last.set(progress);
+                observer.progress(config.getAlias(), progress);
+                return progressListener.apply(progress);
+            });
+            observer.transferred(config.getAlias(), transferred, last.get().getReadBytes(), Duration.ofNanos(System.nanoTime() - started));
+            return transferred;
+        }
+        catch (RuntimeException exc)
+        {
+            observer.failed(config.getAlias(), exc);
+            throw exc;
+        }
+    }
+
+    private long transfer(final Function<TransferProgress, Boolean> progressListener)
+    {
+        final ChangeProbe probe = config.getSource().getProbe();
+        final String probed = probe != null ? readProbe(probe) : null;
+        if (probed != null && stateStore.get(config.getAlias(), PROBE_KEY).filter(probed::equals).isPresent())
+        {
+            logger.debug("Probe of {} is unchanged at {}, skipping transfer", config.getAlias(), probed);
+            return 0;
+        }
+
+        final AtomicBoolean stopped = new AtomicBoolean();
+        final long transferred = transfer(progress ->
+        {
+            final boolean proceed = progressListener.apply(progress);
+            if (!proceed)
+            {
+                stopped.set(true);
+            }
+            return proceed;
+        }, stopped);
+
+        // Read before the transfer, so changes made during it are picked up by the next run
+        if (probed != null && !stopped.get())
+        {
+            stateStore.put(config.getAlias(), PROBE_KEY, probed);
+        }
+        return transferred;
+    }
+
+    /**
+     * @return The current result of the probe, or null if unknown
+     */
+    private String readProbe(final ChangeProbe probe)
+    {
+        Assert.isTrue(probe.getQuery() != null ^ probe.getTable() != null, "The probe of " + config.getAlias() + " needs either a query or a table");
+        final Object value;
+        if (probe.getQuery() != null)
+        {
+            value = tpl.queryForObject(probe.getQuery(), Collections.emptyMap(), Object.class);
+        }
+        else
+        {
+            value = readUpdateTime(probe.getTable());
+        }
+        return value != null ? String.valueOf(value) : null;
+    }
+
+    /**
+     * @return The <code>UPDATE_TIME</code> of the table, or null if unknown or still in the current second, as a later write
+     * in the same second would leave it unchanged
+     */
+    private Object readUpdateTime(final String table)
+    {
+        // Only maintained by InnoDB since MySQL 5.7, and null again after a restart. MySQL 8 caches it for a day by default
+        return tpl.getJdbcTemplate().execute((ConnectionCallback<Object>) connection ->
+        {
+            try (final Statement statement = connection.createStatement())
+            {
+                final boolean cached = setStatsExpiry(statement, "0");
+                try (final PreparedStatement ps = connection.prepareStatement("SELECT UPDATE_TIME, UPDATE_TIME < NOW() FROM information_schema.tables WHERE table_schema = DATABASE() AND table_name = ?"))
+                {
+                    ps.setString(1, table);
+                    try (final java.sql.ResultSet rs = ps.executeQuery())
+                    {
+                        return rs.next() && rs.getBoolean(2) ? rs.getObject(1) : null;
+                    }
+                }
+                finally
+                {
+                    if (cached)
+                    {
+                        setStatsExpiry(statement, "DEFAULT");
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * @return Whether the server caches the statistics of information_schema, as MySQL 8 does
+     */
+    private static boolean setStatsExpiry(final Statement statement, final String value) throws SQLException
+    {
+        try
+        {
+            statement.execute("SET SESSION information_schema_stats_expiry = " + value);
+            return true;
+        }
+        catch (SQLException exc)
+        {
+            if (exc.getErrorCode() == ER_UNKNOWN_SYSTEM_VARIABLE)
+            {
+                return false;
+            }
+            throw exc;
+        }
+    }
+
+    private long transfer(final Function<TransferProgress, Boolean> listener, final AtomicBoolean stopped)
     {
         final Source source = config.getSource();
-        final Target target = config.getTarget();
         final String qualifiedTargetTableName = config.getTarget().getClickhouse().getDb() + "." + config.getAlias();
 
         logger.debug("Target table is {}", qualifiedTargetTableName);
         final ResultSet result = clackShack.query("EXISTS TABLE " + qualifiedTargetTableName);
         final boolean tableExists = result.get(0, 0, Number.class).intValue() == 1;
 
-        final boolean isIncremental = source.getRangeClause() != null;
-        logger.debug("Found range-clause, so is incremental: {}", isIncremental);
+        final boolean isIncremental = source.isIncremental();
+        logger.debug("Found range-clause or update-column, so is incremental: {}", isIncremental);
+
+        // An existing table is kept and only its changed partitions replaced
+        final boolean partitioned = !isIncremental && tableExists && source.getPartitioning() != null;
+
+        // A resumable transfer that did not complete continues with the same rows, skipping the chunks already committed
+        final boolean resumable = source.isResumable() && !partitioned;
+        final Optional<TransferCheckpoint> resumed = resumable && tableExists
+                ? TransferCheckpoint.load(stateStore, config.getAlias(), source.getQuery())
+                : Optional.empty();
+        if (resumed.isPresent())
+        {
+            logger.info("Resuming transfer of {}: {}", config.getAlias(), resumed.get());
+            return transferResumable(resumed.get(), listener, stopped);
+        }
+
+        final long ddlStarted = System.nanoTime();
+        String sourceQuery = partitioned ? getSourceQuery() : prepareTarget(config, isIncremental, tableExists);
+        phaseCompleted(TransferPhase.DDL, ddlStarted);
+
+        // Pin the upper bound up front, so rows committed in MySQL during the transfer are left for the next run
+        final Object highWaterMark = isIncremental ? findHighWaterMark(sourceQuery) : null;
+        if (isIncremental)
+        {
+            if (highWaterMark == null)
+            {
+                logger.debug("No new rows for {}", config.getAlias());
+                return 0;
+            }
+            sourceQuery = restrict(sourceQuery, getWatermarkColumn() + " <= " + toLiteral(highWaterMark));
+        }
+
+        if (isIncremental && source.getBatching() != null)
+        {
+            return transferBatches(sourceQuery, listener, stopped);
+        }
+
+        if (resumable)
+        {
+            final String watermark = highWaterMark != null ? toWatermark(highWaterMark) : null;
+            return transferResumable(TransferCheckpoint.create(stateStore, config.getAlias(), source.getQuery(), sourceQuery, watermark), listener, stopped);
+        }
+
+        final long transferred = partitioned
+                ? transferPartitions(sourceQuery, listener, stopped)
+                : transferInto(sourceQuery, config.getAlias(), listener);
+
+        if (highWaterMark != null && !stopped.get())
+        {
+            storeWatermark(toWatermark(highWaterMark));
+        }
+        return transferred;
+    }
+
+    /**
+     * Transfers the rows of an incremental run in batches of at most max-rows, in the order of the batching key. Each batch is
+     * bounded by the key of its last row, and stores the watermark and that key before the next batch starts, so a failed run
+     * only repeats its last batch.
+     */
+    private long transferBatches(final String sourceQuery, final Function<TransferProgress, Boolean> listener, final AtomicBoolean stopped)
+    {
+        final Batching batching = config.getSource().getBatching();
+        final List<String> key = getBatchKey();
+        validateBatching(key);
+        final String keyColumns = String.join(", ", key);
+        final String descending = String.join(" DESC, ", key) + " DESC";
+
+        final AtomicLong doneRows = new AtomicLong();
+        final AtomicLong doneBytes = new AtomicLong();
+        final AtomicReference<TransferProgress> last = new AtomicReference<>(new TransferProgress(0, 0));
+        final Function<TransferProgress, Boolean> batchListener = progress ->
+        {
+            last.set(progress);
+            return listener.apply(new TransferProgress(doneRows.get() + progress.getReadRows(), doneBytes.get() + progress.getReadBytes()));
+        };
+
+        String remaining = sourceQuery;
+        long transferred = 0;
+        int batches = 0;
+        while (true)
+        {
+            final List<Map<String, Object>> boundary = tpl.queryForList("SELECT " + keyColumns + " FROM (" + remaining + ") my2ch_src ORDER BY " + keyColumns
+                    + " LIMIT 1 OFFSET " + (batching.getMaxRows() - 1), Collections.emptyMap());
+            final boolean lastBatch = boundary.isEmpty();
+            final List<Map<String, Object>> end = lastBatch
+                    ? tpl.queryForList("SELECT " + keyColumns + " FROM (" + remaining + ") my2ch_src ORDER BY " + descending + " LIMIT 1", Collections.emptyMap())
+                    : boundary;
+            if (end.isEmpty())
+            {
+                break;
+            }
+
+            final List<String> literals = new ArrayList<>(key.size());
+            end.get(0).values().forEach(value ->
+            {
+                Assert.notNull(value, "The batching key of " + config.getAlias() + " must not be null");
+                literals.add(toLiteral(value));
+            });
+            final KeysetCursor cursor = new KeysetCursor(toWatermark(end.get(0).values().iterator().next()), literals);
+
+            final String batchQuery = lastBatch ? remaining : restrict(remaining, cursor.upTo(key));
+            last.set(new TransferProgress(0, 0));
+            transferred += transferInto(batchQuery, config.getAlias(), batchListener);
+            if (stopped.get())
+            {
+                break;
+            }
+            doneRows.addAndGet(last.get().getReadRows());
+            doneBytes.addAndGet(last.get().getReadBytes());
+            batches++;
+
+            stateStore.put(config.getAlias(), CURSOR_KEY, cursor.toJson());
+            storeWatermark(cursor.getWatermark());
+            if (lastBatch)
+            {
+                break;
+            }
+            remaining = restrict(sourceQuery, cursor.after(key));
+        }
+
+        logger.debug("Transferred {} rows of {} in {} batches", transferred, config.getAlias(), batches);
+        return transferred;
+    }
+
+    /**
+     * Each batch boundary is found by ordering the remaining backlog by the key. That only reads up to the boundary if MySQL
+     * can merge the query into the outer one and walk an index on the key. Otherwise every probe sorts the whole backlog.
+     */
+    private void validateBatching(final List<String> key)
+    {
+        final Source source = config.getSource();
+        final Matcher matcher = NON_MERGEABLE.matcher(source.getQuery());
+        if (matcher.find())
+        {
+            throw new IllegalArgumentException("Batching of " + config.getAlias() + " requires a query MySQL can merge, without " + matcher.group().trim().toUpperCase()
+                    + ", as each batch would otherwise sort the whole backlog");
+        }
+
+        if (source.getTable() != null)
+        {
+            final Map<String, Object> params = new LinkedHashMap<>();
+            params.put("table", source.getTable());
+            params.put("column", key.get(0));
+            final Long indexes = tpl.queryForObject("SELECT COUNT(*) FROM information_schema.statistics WHERE table_schema = DATABASE() AND table_name = :table AND column_name = :column AND seq_in_index = 1", params, Long.class);
+            if (indexes == null || indexes == 0)
+            {
+                logger.warn("No index of {} starts with the batching key {} of {}, so each batch sorts the whole backlog", source.getTable(), key.get(0), config.getAlias());
+            }
+        }
+    }
+
+    /**
+     * @return The key ordering the batches, starting with the watermark column
+     */
+    private List<String> getBatchKey()
+    {
+        final Batching batching = config.getSource().getBatching();
+        if (batching == null || batching.getKey().isEmpty())
+        {
+            return Collections.singletonList(getWatermarkColumn());
+        }
+        Assert.isTrue(batching.getKey().get(0).equals(getWatermarkColumn()), "The batching key of " + config.getAlias() + " must start with " + getWatermarkColumn());
+        return batching.getKey();
+    }
+
+    private Optional<KeysetCursor> getCursor()
+    {
+        if (config.getSource().getBatching() == null)
+        {
+            return Optional.empty();
+        }
+        return stateStore.get(config.getAlias(), CURSOR_KEY).flatMap(KeysetCursor::parse);
+    }
+
+    private long transferResumable(final TransferCheckpoint checkpoint, final Function<TransferProgress, Boolean> listener, final AtomicBoolean stopped)
+    {
+        final long transferred = transferInto(checkpoint.getQuery(), config.getAlias(), listener, checkpoint);
+        if (!stopped.get())
+        {
+            if (checkpoint.getWatermark() != null)
+            {
+                storeWatermark(checkpoint.getWatermark());
+            }
+            checkpoint.remove();
+        }
+        return transferred;
+    }
+
+    private void storeWatermark(final String watermark)
+    {
+        logger.debug("Storing watermark {} for {}", watermark, config.getAlias());
+        stateStore.put(config.getAlias(), WATERMARK_KEY, watermark);
+        observer.watermark(config.getAlias(), watermark);
+    }
+
+    /**
+     * Runs one bounded pass comparing the source and the ClickHouse table range by range, transferring differing ranges again
+     */
+    public ReconcileResult reconcile()
+    {
+        final Reconcile settings = config.getReconcile();
+        final Target target = config.getTarget();
+        final String key = settings.getKey() != null ? settings.getKey() : target.getPrimaryKey();
+        final String targetDbAndTable = target.getClickhouse().getDb() + "." + config.getAlias();
 
-        final String mysqlDbName = tpl.queryForObject("SELECT DATABASE()", Collections.emptyMap(), String.class);
+        // Compare the current version of each row only
+        String targetRelation = targetDbAndTable;
+        if (config.getSource().getCdc() != null)
+        {
+            targetRelation = "(SELECT * FROM " + targetDbAndTable + " FINAL WHERE " + Cdc.SIGN_COLUMN + " > 0)";
+        }
+        else if (config.getSource().getUpdateColumn() != null)
+        {
+            targetRelation = "(SELECT * FROM " + targetDbAndTable + " FINAL)";
+        }
 
+        final String sourceQuery;
+        if (config.getSource().isIncremental())
+        {
+            // Rows above the watermark are left for the next incremental transfer
+            final Optional<String> watermark = stateStore.get(config.getAlias(), WATERMARK_KEY);
+            if (watermark.isEmpty())
+            {
+                logger.info("Not reconciling {}, as it has no watermark yet", config.getAlias());
+                return new ReconcileResult(0, 0, 0, true);
+            }
+            final String literal = NUMBER.matcher(watermark.get()).matches() ? watermark.get() : "'" + watermark.get().replace("'", "''") + "'";
+            final String bound = getWatermarkColumn() + " <= " + literal;
+            sourceQuery = restrict(getSourceQuery(), bound);
+            targetRelation = "(SELECT * FROM " + targetRelation + " my2ch_target WHERE " + bound + ")";
+        }
+        else
+        {
+            sourceQuery = getSourceQuery();
+        }
+
+        final RangeReconciler reconciler = new RangeReconciler(tpl, clackShack, stateStore, settings, config.getAlias(), key);
+        return reconciler.run("(" + sourceQuery + ") my2ch_src", targetRelation, range ->
+        {
+            final String predicate = range.toPredicate(key);
+            ddl("ALTER TABLE " + targetDbAndTable + " DELETE WHERE " + predicate);
+            awaitMutations(target.getClickhouse().getDb(), config.getAlias());
+            return transferInto(restrict(sourceQuery, predicate), config.getAlias(), progress -> true);
+        });
+    }
+
+    /**
+     * Deletes the rows of the ClickHouse table whose key is no longer returned by the source query
+     *
+     * @return The number of deleted rows
+     */
+    public long syncDeletes()
+    {
+        final DeleteSync settings = config.getDeleteSync();
+        Assert.notNull(settings, "No delete-sync configured for " + config.getAlias());
+        final Target target = config.getTarget();
+        final String key = settings.getKey() != null ? settings.getKey() : target.getPrimaryKey();
+        final String targetDbAndTable = target.getClickhouse().getDb() + "." + config.getAlias();
+        final boolean tombstones = config.getSource().getCdc() != null;
+
+        final DeletePropagator propagator = new DeletePropagator(streamingTemplate, httpClient, clackShack, settings, key);
+        final long deleted = propagator.run(getSourceQuery(), targetDbAndTable, tombstones);
+        if (deleted > 0 && !tombstones && settings.getMode() == DeleteMode.MUTATION)
+        {
+            awaitMutations(target.getClickhouse().getDb(), config.getAlias());
+        }
+        return deleted;
+    }
+
+    private void awaitMutations(final String db, final String table)
+    {
+        final Map<String, Object> params = new LinkedHashMap<>();
+        params.put("db", db);
+        params.put("table", table);
+        final long deadline = System.nanoTime() + MUTATION_TIMEOUT.toNanos();
+        while (clackShack.query("SELECT count() FROM system.mutations WHERE database = :db AND table = :table AND NOT is_done", params).get(0, 0, Number.class).longValue() > 0)
+        {
+            if (System.nanoTime() > deadline)
+            {
+                throw new IllegalStateException("Mutations of " + db + "." + table + " did not finish within " + MUTATION_TIMEOUT);
+            }
+            try
+            {
+                Thread.sleep(200);
+            }
+            catch (InterruptedException exc)
+            {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while waiting for mutations of " + db + "." + table, exc);
+            }
+        }
+    }
+
+    private long transferInto(final String sourceQuery, final String targetTable, final Function<TransferProgress, Boolean> progressListener)
+    {
+        return transferInto(sourceQuery, targetTable, progressListener, null);
+    }
+
+    /**
+     * @param checkpoint The progress of a resumable transfer, or null
+     */
+    private long transferInto(final String sourceQuery, final String targetTable, final Function<TransferProgress, Boolean> progressListener, final TransferCheckpoint checkpoint)
+    {
+        return config.getSource().getEngine() == TransferEngine.STREAMING
+                ? transferStreaming(sourceQuery, targetTable, progressListener, checkpoint)
+                : transferMysqlEngine(sourceQuery, targetTable, progressListener, checkpoint);
+    }
+
+    /**
+     * Loads the partitions that differ from the source into a staging table, and replaces them in the target table
+     */
+    private long transferPartitions(final String sourceQuery, final Function<TransferProgress, Boolean> progressListener, final AtomicBoolean stopped)
+    {
+        final String db = config.getTarget().getClickhouse().getDb();
+        final String targetDbAndTable = db + "." + config.getAlias();
+        final PartitionSync partitionSync = new PartitionSync(tpl, clackShack, config.getSource().getPartitioning(), config.getTarget().getPrimaryKey());
+        final PartitionSync.Plan plan = partitionSync.plan(sourceQuery, db, config.getAlias());
+
+        long transferred = 0;
+        final Set<String> replacedIds = new HashSet<>();
+        if (!plan.getChanged().isEmpty())
+        {
+            final String stagingTable = "tmp_" + config.getAlias() + "_staging";
+            final String stagingDbAndTable = db + "." + stagingTable;
+            final long ddlStarted = System.nanoTime();
+            ddl("DROP TABLE IF EXISTS " + stagingDbAndTable);
+            ddl("CREATE TABLE " + stagingDbAndTable + " AS " + targetDbAndTable);
+            phaseCompleted(TransferPhase.DDL, ddlStarted);
+            try
+            {
+                final String changedQuery = restrict(sourceQuery, partitionSync.getSourcePredicate(plan.getChanged(), My2ch::toLiteral));
+                transferred = transferInto(changedQuery, stagingTable, progressListener);
+                if (stopped.get())
+                {
+                    return transferred;
+                }
+
+                final long replaceStarted = System.nanoTime();
+                for (final Map<String, Object> row : clackShack.query("SELECT DISTINCT _partition_id AS id FROM " + stagingDbAndTable).asMap())
+                {
+                    final String id = String.valueOf(row.get("id"));
+                    logger.debug("Replacing partition {} of {}", id, targetDbAndTable);
+                    ddl("ALTER TABLE " + targetDbAndTable + " REPLACE PARTITION ID '" + id + "' FROM " + stagingDbAndTable);
+                    replacedIds.add(id);
+                }
+                phaseCompleted(TransferPhase.DDL, replaceStarted);
+            }
+            finally
+            {
+                ddl("DROP TABLE IF EXISTS " + stagingDbAndTable);
+            }
+        }
+
+        for (final String id : plan.getRemovedIds())
+        {
+            if (replacedIds.contains(id))
+            {
+                // The source has rows for this partition after all, so its key did not match the one in ClickHouse
+                logger.warn("Not dropping partition {} of {}, as it was just replaced from the source", id, targetDbAndTable);
+                continue;
+            }
+            logger.debug("Dropping partition {} of {}, as it is no longer in the source", id, targetDbAndTable);
+            ddl("ALTER TABLE " + targetDbAndTable + " DROP PARTITION ID '" + id + "'");
+        }
+        return transferred;
+    }
+
+    private Object findHighWaterMark(final String sourceQuery)
+    {
+        return tpl.queryForObject("SELECT MAX(" + getWatermarkColumn() + ") FROM (" + sourceQuery + ") my2ch_src", Collections.emptyMap(), Object.class);
+    }
+
+    private long transferMysqlEngine(final String sourceQuery, final String targetTable, final Function<TransferProgress, Boolean> progressListener, final TransferCheckpoint checkpoint)
+    {
+        if (isReadingTable())
+        {
+            return transferTable(sourceQuery, targetTable, progressListener, checkpoint);
+        }
+
+        final long viewSetupStarted = System.nanoTime();
+        final String mysqlDbName = getMysqlDbName();
+        createMysqlEngineDatabase(mysqlDbName);
+
+        final String viewName = createView(config.getAlias(), sourceQuery);
+        phaseCompleted(TransferPhase.VIEW_SETUP, viewSetupStarted);
+
+        logger.debug("Starting transfer from MySQL view {} to ClickHouse table {}", viewName, targetTable);
+        final long insertStarted = System.nanoTime();
+        final long transferred = transferChunks(getChunkPredicates(viewName, checkpoint), progressListener, checkpoint, (chunk, predicate, aggregator) ->
+        {
+            final String dedupToken = checkpoint != null ? checkpoint.getToken(chunk) : null;
+            if (predicate == null && checkpoint == null)
+            {
+                return transferData("SELECT * FROM mysql_" + mysqlDbName + "." + viewName, targetTable, null, p -> aggregator.update(chunk, p));
+            }
+
+            final String chunkViewName = viewName + "_" + chunk;
+            final String where = predicate != null ? " WHERE " + predicate : "";
+            tpl.update("CREATE OR REPLACE VIEW " + chunkViewName + " AS SELECT * FROM " + viewName + where + getResumableOrder(checkpoint), Collections.emptyMap());
+            try
+            {
+                final long rows = transferData("SELECT * FROM mysql_" + mysqlDbName + "." + chunkViewName, targetTable, dedupToken, p -> aggregator.update(chunk, p));
+                // ClickHouse reads the chunk on its own, so the rate limit can only space out the chunks
+                throttle.pace(rows);
+                return rows;
+            }
+            finally
+            {
+                dropView(chunkViewName);
+            }
+        });
+        phaseCompleted(TransferPhase.INSERT, insertStarted);
+
+        logger.debug("Dropping view {} in MySQL", viewName);
+        dropView(viewName);
+
+        return transferred;
+    }
+
+    private String getMysqlDbName()
+    {
+        if (mysqlDbName == null)
+        {
+            mysqlDbName = tpl.queryForObject("SELECT DATABASE()", Collections.emptyMap(), String.class);
+        }
+        return mysqlDbName;
+    }
+
+    /**
+     * Runs a DDL statement with the configured settings, which ClackShack cannot pass along
+     */
+    private void ddl(final String statement)
+    {
+        if (settings.getQuery().isEmpty())
+        {
+            clackShack.ddl(statement);
+        }
+        else
+        {
+            httpClient.execute(statement, settings.getQuery());
+        }
+    }
+
+    private void createMysqlEngineDatabase(final String mysqlDbName)
+    {
         logger.debug("Connecting to source {}", config.getSource().getMysql());
         final MysqlConfig mysqlConfig = config.getSource().getMysql();
 
         final String createMysqlEngine = "CREATE DATABASE IF NOT EXISTS mysql_"
-                + mysqlDbName + " ENGINE = MySQL('" + mysqlConfig.getHost() + ":" + mysqlConfig.getPort() + "', '" + mysqlDbName + "', '" + mysqlConfig.getUsername() + "', '" + mysqlConfig.getPassword() + "')";
+                + mysqlDbName + " ENGINE = MySQL('" + mysqlConfig.getHost() + ":" + mysqlConfig.getPort() + "', '" + mysqlDbName + "', '" + mysqlConfig.getUsername() + "', '" + mysqlConfig.getPassword() + "') " + settings.engineClause();
         logger.debug("Command to create MySQL DB proxy in Clickhouse: {}", createMysqlEngine);
 
-        clackShack.ddl(createMysqlEngine);
+        ddl(createMysqlEngine);
         logger.debug("MySQL database connection created from ClickHouse to MySQL");
+    }
 
-        final String viewName = setupView(config, isIncremental, tableExists);
+    /**
+     * Transfers from the source table directly, without creating a view in MySQL. The predicates of the query, of the chunk
+     * and the watermark bounds are simple comparisons in a flat WHERE clause, which ClickHouse sends on to MySQL.
+     */
+    private long transferTable(final String sourceQuery, final String targetTable, final Function<TransferProgress, Boolean> progressListener, final TransferCheckpoint checkpoint)
+    {
+        final Source source = config.getSource();
+        final String baseQuery = getSourceQuery();
+        Assert.isTrue(source.getTable() != null && source.getCdc() == null && baseQuery.equals("SELECT * FROM `" + source.getTable() + "`"),
+                "read-mode " + source.getReadMode() + " of " + config.getAlias() + " requires a table instead of a query, and no cdc");
+        // ClickHouse cannot send MOD(CRC32(key), n) on to MySQL, so each chunk would read the whole table
+        Assert.isTrue(source.getChunking() == null || !source.getChunking().isHashed(),
+                "read-mode " + source.getReadMode() + " of " + config.getAlias() + " requires chunking by numeric ranges, not 'hashed: true'");
 
-        logger.debug("Starting transfer from MySQL view {} to ClickHouse table {}", viewName, config.getAlias());
-        final long transferred = transferData("SELECT * FROM mysql_" + mysqlDbName + "." + viewName, target.getClickhouse().getDb(), config.getAlias(), progressListener);
+        final long setupStarted = System.nanoTime();
+        final String mysqlDbName = getMysqlDbName();
+        final String relation;
+        if (source.getReadMode() == ReadMode.ENGINE_TABLE)
+        {
+            if (!engineDatabaseCreated)
+            {
+                createMysqlEngineDatabase(mysqlDbName);
+                engineDatabaseCreated = true;
+            }
+            relation = "mysql_" + mysqlDbName + ".`" + source.getTable() + "`";
+        }
+        else
+        {
+            final MysqlConfig mysql = source.getMysql();
+            relation = "mysql('" + mysql.getHost() + ":" + mysql.getPort() + "', '" + mysqlDbName + "', '" + source.getTable() + "', '" + mysql.getUsername() + "', '" + mysql.getPassword() + "')";
+        }
+        phaseCompleted(TransferPhase.VIEW_SETUP, setupStarted);
 
-        logger.debug("Dropping view {} in MySQL", viewName);
-        dropView(viewName);
+        final String select = "SELECT * FROM " + relation;
+        final String query = select + sourceQuery.substring(baseQuery.length());
+        final boolean filtered = WHERE.matcher(query).find(select.length());
+        final long insertStarted = System.nanoTime();
+        final long transferred = transferChunks(getChunkPredicates("(" + sourceQuery + ") my2ch_src", checkpoint), progressListener, checkpoint, (chunk, predicate, aggregator) ->
+        {
+            final String chunkQuery = (predicate != null ? addPredicate(query, select.length(), predicate) : query) + getResumableOrder(checkpoint);
+            final String dedupToken = checkpoint != null ? checkpoint.getToken(chunk) : null;
+            final long rows = transferData(chunkQuery, targetTable, dedupToken, p -> aggregator.update(chunk, p));
+            throttle.pace(rows);
+            return rows;
+        });
+        phaseCompleted(TransferPhase.INSERT, insertStarted);
+
+        if (!pushdownVerified && filtered)
+        {
+            verifyPushdown(sourceQuery, transferred);
+        }
+        return transferred;
+    }
+
+    /**
+     * Warns if ClickHouse read considerably more rows than match the query, which means that it filtered the rows itself
+     * instead of pushing the predicates down to MySQL
+     */
+    private void verifyPushdown(final String sourceQuery, final long readRows)
+    {
+        final long matching = tpl.queryForObject("SELECT COUNT(*) FROM (" + sourceQuery + ") my2ch_src", Collections.emptyMap(), Long.class);
+        if (readRows > 2 * matching + 1000)
+        {
+            logger.warn("ClickHouse read {} rows from MySQL for {} matching rows of {}, so the predicates were likely not pushed down. Keep them to simple comparisons: {}",
+                    readRows, matching, config.getAlias(), sourceQuery);
+        }
+        else
+        {
+            logger.debug("Predicates of {} are pushed down to MySQL, {} rows read for {} matching", config.getAlias(), readRows, matching);
+        }
+        pushdownVerified = true;
+    }
+
+    private long transferStreaming(final String sourceQuery, final String targetTable, final Function<TransferProgress, Boolean> progressListener, final TransferCheckpoint checkpoint)
+    {
+        final ClickHouseConfig chCfg = config.getTarget().getClickhouse();
+        final Map<String, Object> params = new LinkedHashMap<>();
+        params.put("db", chCfg.getDb());
+        params.put("table", targetTable);
+        final Map<String, String> columnTypes = new LinkedHashMap<>();
+        clackShack.query("SELECT name, type FROM system.columns WHERE database = :db AND table = :table", params)
+                .asMap()
+                .forEach(row -> columnTypes.put(row.get("name").toString(), row.get("type").toString()));
 
+        // MySQL date-times have no zone, so they are taken as local to the server, as when ClickHouse reads them from MySQL
+        final ZoneId serverZone = ZoneId.of(clackShack.query("SELECT timezone() AS tz").asMap().get(0).get("tz").toString());
+        final String derivedTable = "(" + sourceQuery + ") my2ch_src";
+        final String targetDbAndTable = chCfg.getDb() + "." + targetTable;
+        final long started = System.nanoTime();
+        final long transferred = transferChunks(getChunkPredicates(derivedTable, checkpoint), progressListener, checkpoint, (chunk, predicate, aggregator) ->
+        {
+            final String query = predicate != null || checkpoint != null
+                    ? "SELECT * FROM " + derivedTable + (predicate != null ? " WHERE " + predicate : "") + getResumableOrder(checkpoint)
+                    : sourceQuery;
+            final String dedupToken = checkpoint != null ? checkpoint.getToken(chunk) : null;
+            return streamingTransfer.transfer(query, targetDbAndTable, columnTypes, serverZone, dedupToken, (rows, bytes) ->
+            {
+                throttle.pace(rows - aggregator.getRows(chunk));
+                return aggregator.update(chunk, rows, bytes);
+            });
+        });
+        phaseCompleted(TransferPhase.INSERT, started);
+        final double seconds = (System.nanoTime() - started) / 1_000_000_000D;
+        logger.debug("Streamed {} rows to {} in {} seconds ({} rows/sec)", transferred, targetDbAndTable, seconds, seconds > 0 ? Math.round(transferred / seconds) : transferred);
         return transferred;
     }
 
+    /**
+     * Runs one transfer per chunk predicate with the configured parallelism, or a single transfer with a null predicate if not chunked
+     */
+    private long transferChunks(final List<String> predicates, final Function<TransferProgress, Boolean> progressListener, final TransferCheckpoint checkpoint, final ChunkTransfer chunkTransfer)
+    {
+        if (predicates.isEmpty())
+        {
+            final ProgressAggregator aggregator = new ProgressAggregator(1, progressListener);
+            return transferChunk(chunkTransfer, 0, null, aggregator, checkpoint);
+        }
+
+        final int parallelism = Math.min(config.getSource().getChunking().getParallelism(), predicates.size());
+        final ExecutorService executor = Executors.newFixedThreadPool(parallelism, new CustomizableThreadFactory("my2ch-" + config.getAlias() + "-chunk-"));
+        final ProgressAggregator aggregator = new ProgressAggregator(predicates.size(), progressListener);
+        try
+        {
+            logger.debug("Transferring {} chunks with parallelism {}", predicates.size(), parallelism);
+            final List<Future<Long>> futures = new ArrayList<>(predicates.size());
+            for (int i = 0; i < predicates.size(); i++)
+            {
+                final int chunk = i;
+                futures.add(executor.submit(() -> transferChunk(chunkTransfer, chunk, predicates.get(chunk), aggregator, checkpoint)));
+            }
+
+            long total = 0;
+            for (final Future<Long> future : futures)
+            {
+                total += future.get();
+            }
+            return total;
+        }
+        catch (InterruptedException exc)
+        {
+            aggregator.abort();
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for chunked transfer of " + config.getAlias(), exc);
+        }
+        catch (ExecutionException exc)
+        {
+            aggregator.abort();
+            final Throwable cause = exc.getCause();
+            if (cause instanceof RuntimeException)
+            {
+                throw (RuntimeException) cause;
+            }
+            throw new IllegalStateException("Chunked transfer of " + config.getAlias() + " failed", cause);
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+    }
+
+    private long transferChunk(final ChunkTransfer chunkTransfer, final int chunk, final String predicate, final ProgressAggregator aggregator, final TransferCheckpoint checkpoint)
+    {
+        if (checkpoint != null && checkpoint.isCompleted(chunk))
+        {
+            logger.debug("Skipping chunk {} of {}, as it was transferred before", chunk, config.getAlias());
+            return 0;
+        }
+
+        throttle.acquire();
+        try
+        {
+            final long rows = chunkTransfer.transfer(chunk, predicate, aggregator);
+            if (checkpoint != null && !aggregator.isAborted())
+            {
+                checkpoint.completed(chunk);
+            }
+            return rows;
+        }
+        finally
+        {
+            throttle.release();
+        }
+    }
+
+    @FunctionalInterface
+    private interface ChunkTransfer
+    {
+        long transfer(int chunk, String predicate, ProgressAggregator aggregator);
+    }
+
+    /**
+     * @return The predicates for each chunk, as planned on the first attempt if resuming a transfer
+     */
+    private List<String> getChunkPredicates(final String relation, final TransferCheckpoint checkpoint)
+    {
+        return checkpoint != null ? checkpoint.getChunks(() -> getChunkPredicates(relation)) : getChunkPredicates(relation);
+    }
+
+    /**
+     * @return An ORDER BY clause making a chunk read the same blocks on every attempt, so repeated blocks are deduplicated
+     */
+    private String getResumableOrder(final TransferCheckpoint checkpoint)
+    {
+        return checkpoint != null ? " ORDER BY " + config.getTarget().getPrimaryKey() : "";
+    }
+
+    /**
+     * @param relation The view or derived table to split
+     * @return The predicates for each chunk, or an empty list if the transfer is not chunked
+     */
+    private List<String> getChunkPredicates(final String relation)
+    {
+        final Chunking chunking = config.getSource().getChunking();
+        if (chunking == null || chunking.getChunks() <= 1)
+        {
+            return Collections.emptyList();
+        }
+
+        final String key = chunking.getKey() != null ? chunking.getKey() : config.getTarget().getPrimaryKey();
+        final List<String> predicates = new ArrayList<>(chunking.getChunks());
+        if (chunking.isHashed())
+        {
+            for (int i = 0; i < chunking.getChunks(); i++)
+            {
+                predicates.add("(MOD(CRC32(" + key + "), " + chunking.getChunks() + ") = " + i + (i == 0 ? " OR " + key + " IS NULL" : "") + ")");
+            }
+            return predicates;
+        }
+
+        final Map<String, Object> bounds = tpl.queryForMap("SELECT MIN(" + key + ") AS min_key, MAX(" + key + ") AS max_key FROM " + relation, Collections.emptyMap());
+        final Object min = bounds.get("min_key");
+        final Object max = bounds.get("max_key");
+        if (min == null || max == null)
+        {
+            return Collections.singletonList("TRUE");
+        }
+        Assert.isTrue(min instanceof Number && max instanceof Number, "Chunking on column " + key + " requires a numeric key, or set 'hashed: true'");
+
+        final List<KeyRange> ranges = ChunkPlanner.split(toLong((Number) min, RoundingMode.FLOOR), toLong((Number) max, RoundingMode.CEILING), chunking.getChunks());
+        logger.debug("Split {} on column {} into ranges {}", config.getAlias(), key, ranges);
+        for (int i = 0; i < ranges.size(); i++)
+        {
+            predicates.add("(" + ranges.get(i).toPredicate(key) + (i == 0 ? " OR " + key + " IS NULL" : "") + ")");
+        }
+        return predicates;
+    }
+
+    /**
+     * @return The value as it should be substituted for {max_primary_key} in the range-clause
+     */
+    private static String toWatermark(final Object value)
+    {
+        if (value instanceof BigDecimal)
+        {
+            return ((BigDecimal) value).toPlainString();
+        }
+        else if (value instanceof Timestamp)
+        {
+            return toWatermark(((Timestamp) value).toLocalDateTime());
+        }
+        else if (value instanceof LocalDateTime)
+        {
+            final LocalDateTime dateTime = (LocalDateTime) value;
+            return dateTime.format(DateTimeFormatter.ofPattern(dateTime.getNano() == 0 ? "yyyy-MM-dd HH:mm:ss" : "yyyy-MM-dd HH:mm:ss.SSSSSS"));
+        }
+        return String.valueOf(value);
+    }
+
+    private static String toLiteral(final Object value)
+    {
+        final String watermark = toWatermark(value);
+        return value instanceof Number ? watermark : "'" + watermark.replace("'", "''") + "'";
+    }
+
+    private static long toLong(final Number number, final RoundingMode roundingMode)
+    {
+        return new BigDecimal(number.toString()).setScale(0, roundingMode).longValueExact();
+    }
+
     public TransferConfig getConfig()
     {
         return config;
@@ -242,6 +1329,11 @@ public class My2ch implements AutoCloseable
     @Override
     public void close()
     {
-        this.dataSource.close();
+        leases.forEach(ConnectionRegistry.Lease::close);
+        leases.clear();
+        if (ownedRegistry != null)
+        {
+            ownedRegistry.close();
+        }
     }
 }
@@ -8,6 +8,7 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
@@ -26,9 +27,11 @@ import org.springframework.boot.context.properties.bind.Bindable;
 import org.springframework.boot.context.properties.bind.Binder;
 import org.springframework.boot.context.properties.source.ConfigurationProperty;
 import org.springframework.boot.context.properties.source.ConfigurationPropertyName;
-import org.springframework.boot.context.properties.source.ConfigurationPropertySource;
+import org.springframework.boot.context.properties.source.ConfigurationPropertyState;
+import org.springframework.boot.context.properties.source.IterableConfigurationPropertySource;
 import org.springframework.boot.env.YamlPropertySourceLoader;
 import org.springframework.boot.origin.PropertySourceOrigin;
+import org.springframework.core.env.EnumerablePropertySource;
 import org.springframework.core.env.PropertySource;
 import org.springframework.core.env.SystemEnvironmentPropertySource;
 import org.springframework.core.io.ByteArrayResource;
@@ -80,34 +83,77 @@ public class My2chConfigLoader
             propertySources.addAll(new YamlPropertySourceLoader().load(baseName, replaceEnv(baseConfigResource, env)));
         }
 
-        final ConfigurationPropertySource s = name ->
+        final Binder binder = new Binder(new FallbackPropertySource(propertySources));
+        final T config = binder.bind(ConfigurationPropertyName.of(""), Bindable.of(type), new BindHandler()
+        {
+        }).get();
+        final Set<ConstraintViolation<T>> violations = validator.validate(config);
+        if (!violations.isEmpty())
+        {
+            throw new IllegalArgumentException("Error loading " + configResource.getURI()
+                    + ": " + StringUtils.collectionToDelimitedString(violations.stream().map(v -> v.getPropertyPath() + ": " + v.getMessage()).collect(Collectors.toList()), "\n"));
+        }
+
+        return config;
+    }
+
+    /**
+     * Looks up each property in the given sources in order, so the config of the alias overrides the base config. The names
+     * of the config files can be iterated, which is needed for binding maps, like the ClickHouse settings of the target.
+     * Maps are merged key by key across the files.
+     */
+    private static class FallbackPropertySource implements IterableConfigurationPropertySource
+    {
+        private final List<PropertySource<?>> propertySources;
+        private final Map<ConfigurationPropertyName, String> names = new LinkedHashMap<>();
+
+        FallbackPropertySource(final List<PropertySource<?>> propertySources)
+        {
+            this.propertySources = propertySources;
+            for (final PropertySource<?> propertySource : propertySources)
+            {
+                if (propertySource instanceof EnumerablePropertySource && !(propertySource instanceof SystemEnvironmentPropertySource))
+                {
+                    for (final String name : ((EnumerablePropertySource<?>) propertySource).getPropertyNames())
+                    {
+                        // Keeps the original name, as map keys like max_insert_threads are not valid in the canonical form
+                        names.putIfAbsent(ConfigurationPropertyName.adapt(name, '.'), name);
+                    }
+                }
+            }
+        }
+
+        @Override
+        public ConfigurationProperty getConfigurationProperty(final ConfigurationPropertyName name)
         {
             if (name == null)
             {
                 return null;
             }
+            final String key = names.getOrDefault(name, name.toString());
             for (PropertySource<?> configurationPropertySource : propertySources)
             {
-                Object value = configurationPropertySource.getProperty(name.toString());
+                Object value = configurationPropertySource.getProperty(key);
                 if (value != null)
                 {
                     return new ConfigurationProperty(name, value, new PropertySourceOrigin(configurationPropertySource, configurationPropertySource.getName()));
                 }
             }
             return null;
-        };
-        final Binder binder = new Binder(s);
-        final T config = binder.bind(ConfigurationPropertyName.of(""), Bindable.of(type), new BindHandler()
-        {
-        }).get();
-        final Set<ConstraintViolation<T>> violations = validator.validate(config);
-        if (!violations.isEmpty())
+        }
+
+        @Override
+        public Stream<ConfigurationPropertyName> stream()
         {
-            throw new IllegalArgumentException("Error loading " + configResource.getURI()
-                    + ": " + StringUtils.collectionToDelimitedString(violations.stream().map(v -> v.getPropertyPath() + ": " + v.getMessage()).collect(Collectors.toList()), "\n"));
+            return names.keySet().stream();
         }
 
-        return config;
+        @Override
+        public ConfigurationPropertyState containsDescendantOf(final ConfigurationPropertyName name)
+        {
+            // Properties may also come from the environment only, which cannot be iterated
+            return ConfigurationPropertyState.UNKNOWN;
+        }
     }
 
     private static Resource replaceEnv(final Resource resource, final Map<String, String> env)
@@ -0,0 +1,123 @@
+package com.ethlo.my2ch;
+
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.ethlo.my2ch.config.LifeCycle;
+import com.ethlo.my2ch.config.TransferConfig;
+
+/**
+ * A lean entry point for a single transfer of each alias, as run from cron or a Kubernetes Job. It does the same as the
+ * <code>transfer</code> command of the CLI without <code>--service</code>, but without starting a Spring context, a web
+ * server or the actuator, so the start-up does not dominate the runtime of small aliases.
+ * <p>
+ * Usage: <code>java -cp ... com.ethlo.my2ch.My2chMain --home=/data [--names=a,b]</code>
+ */
+public class My2chMain
+{
+    private static final Logger logger = LoggerFactory.getLogger(My2chMain.class);
+
+    public static void main(final String[] args)
+    {
+        Path home = null;
+        List<String> names = null;
+        for (final String arg : args)
+        {
+            if (arg.startsWith("--home="))
+            {
+                home = Paths.get(arg.substring("--home=".length()));
+            }
+            else if (arg.startsWith("--names="))
+            {
+                names = Arrays.asList(arg.substring("--names=".length()).split(","));
+            }
+            else
+            {
+                System.err.println("Unknown argument: " + arg);
+                System.err.println("Usage: My2chMain --home=<dir> [--names=<alias>,...]");
+                System.exit(2);
+            }
+        }
+
+        if (home == null)
+        {
+            System.err.println("Usage: My2chMain --home=<dir> [--names=<alias>,...]");
+            System.exit(2);
+        }
+
+        System.exit(run(home, names) ? 0 : 1);
+    }
+
+    /**
+     * Runs the BEFORE migrations, the transfer and the AFTER migrations of each alias in turn
+     *
+     * @return Whether all aliases were transferred, and there was at least one
+     */
+    static boolean run(final Path home, final List<String> names)
+    {
+        final List<Path> directories = new ArrayList<>();
+        for (final Path directory : My2chConfigLoader.getConfigDirectories(home, names))
+        {
+            final Path transferFile = directory.resolve("transfer.yml");
+            if (Files.isRegularFile(transferFile))
+            {
+                directories.add(directory);
+            }
+        }
+        logger.info("Found {} tasks in {}", directories.size(), home);
+        if (directories.isEmpty())
+        {
+            logger.error("No tasks to run in {}", home);
+            return false;
+        }
+
+        long total = 0;
+        int failed = 0;
+        boolean first = true;
+        try (final ConnectionRegistry connectionRegistry = new ConnectionRegistry(null))
+        {
+            final DdlManager ddlManager = new DdlManagerImpl(connectionRegistry, TransferObserver.NOOP);
+            for (final Path directory : directories)
+            {
+                final String alias = My2chConfigLoader.getAlias(directory);
+                try
+                {
+                    final TransferConfig config = My2chConfigLoader.loadConfig(directory.resolve("transfer.yml"), TransferConfig.class);
+                    ddlManager.run(directory, LifeCycle.BEFORE);
+                    final long rows;
+                    try (final My2ch my2ch = new My2ch(config, connectionRegistry))
+                    {
+                        if (first)
+                        {
+                            // The constructor has queried MySQL, which is where the start-up ends for a one-shot transfer
+                            logger.info("First query after {} from JVM start", Duration.ofMillis(ManagementFactory.getRuntimeMXBean().getUptime()));
+                            first = false;
+                        }
+                        rows = my2ch.run(progress -> true);
+                    }
+                    ddlManager.run(directory, LifeCycle.AFTER);
+                    logger.info("Task {} - Completed with {} new rows", alias, String.format("%,d", rows));
+                    total += rows;
+                }
+                catch (RuntimeException exc)
+                {
+                    logger.error("Task {} failed: {}", alias, exc.getMessage(), exc);
+                    failed++;
+                }
+            }
+        }
+
+        logger.info("Completed {} tasks with a total of {} copied rows in {} since JVM start ({} failed)",
+                directories.size() - failed, String.format("%,d", total), Duration.ofMillis(ManagementFactory.getRuntimeMXBean().getUptime()), failed);
+        return failed == 0;
+    }
+}
@@ -0,0 +1,235 @@
+package com.ethlo.my2ch;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.StringJoiner;
+import java.util.function.Function;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+
+import com.ethlo.clackshack.ClackShack;
+import com.ethlo.my2ch.config.Partitioning;
+
+/**
+ * Finds the partitions that differ between the source query and the ClickHouse table, by comparing the row count and the
+ * {@link RowChecksum} of each partition.
+ * <p>
+ * The partitions are matched by the text of their value. The values returned by MySQL are rendered the way
+ * <code>toString()</code> renders them in ClickHouse, see {@link #key(Object)}. If not a single partition matches while both
+ * sides have rows, the expressions do not agree, and the sync is aborted rather than replacing and dropping every partition.
+ * The expression must be the partition key of the table, see {@link #checkPartitionKey(String, String, String)}.
+ */
+class PartitionSync
+{
+    private static final Logger logger = LoggerFactory.getLogger(PartitionSync.class);
+    private static final DateTimeFormatter DATE_TIME = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    private final NamedParameterJdbcTemplate tpl;
+    private final ClackShack clackShack;
+    private final Partitioning partitioning;
+    private final List<String> checksumColumns;
+
+    PartitionSync(final NamedParameterJdbcTemplate tpl, final ClackShack clackShack, final Partitioning partitioning, final String primaryKey)
+    {
+        this.tpl = tpl;
+        this.clackShack = clackShack;
+        this.partitioning = partitioning;
+        this.checksumColumns = !partitioning.getChecksumColumns().isEmpty() ? partitioning.getChecksumColumns() : Collections.singletonList(primaryKey);
+    }
+
+    /**
+     * @param query The source query
+     * @param db    The ClickHouse database
+     * @param table The ClickHouse table
+     * @return The partitions to reload and to drop
+     */
+    Plan plan(final String query, final String db, final String table)
+    {
+        final String targetDbAndTable = db + "." + table;
+        final Map<String, Object> params = new LinkedHashMap<>();
+        params.put("db", db);
+        params.put("table", table);
+        final List<Map<String, Object>> tables = clackShack.query("SELECT partition_key FROM system.tables WHERE database = :db AND name = :table", params).asMap();
+        checkPartitionKey(partitioning.getExpression(), tables.isEmpty() ? null : String.valueOf(tables.get(0).get("partition_key")), targetDbAndTable);
+
+        final Map<String, Object> sourceValues = new LinkedHashMap<>();
+        final Map<String, String> sourceFingerprints = new LinkedHashMap<>();
+        tpl.query("SELECT " + partitioning.getSourceExpression() + " AS my2ch_partition, COUNT(*) AS my2ch_rows, " + RowChecksum.mysql(checksumColumns) + " AS my2ch_checksum "
+                + "FROM (" + query + ") my2ch_src GROUP BY my2ch_partition", Collections.emptyMap(), rs ->
+        {
+            final Object value = rs.getObject(1);
+            final String key = key(value);
+            sourceValues.put(key, value);
+            sourceFingerprints.put(key, RowChecksum.fingerprint(rs.getLong(2), rs.getString(3)));
+        });
+
+        final Map<String, String> targetFingerprints = new LinkedHashMap<>();
+        final Map<String, String> targetIds = new LinkedHashMap<>();
+        clackShack.query("SELECT toString(" + partitioning.getExpression() + ") AS partition, any(_partition_id) AS id, count() AS rows, " + RowChecksum.clickHouse(checksumColumns) + " AS checksum "
+                        + "FROM " + targetDbAndTable + " GROUP BY partition")
+                .asMap()
+                .forEach(row ->
+                {
+                    final String key = String.valueOf(row.get("partition"));
+                    targetFingerprints.put(key, RowChecksum.fingerprint(((Number) row.get("rows")).longValue(), String.valueOf(row.get("checksum"))));
+                    targetIds.put(key, String.valueOf(row.get("id")));
+                });
+
+        if (!targetFingerprints.isEmpty() && sourceFingerprints.keySet().stream().noneMatch(targetFingerprints::containsKey))
+        {
+            throw new IllegalStateException("None of the " + sourceFingerprints.size() + " partitions of the source query match any of the "
+                    + targetFingerprints.size() + " partitions of " + targetDbAndTable + ", like " + first(sourceFingerprints) + " and " + first(targetFingerprints)
+                    + ". Check that source-expression and expression produce the same values");
+        }
+
+        final List<Object> changed = new ArrayList<>();
+        sourceFingerprints.forEach((partition, fingerprint) ->
+        {
+            if (!fingerprint.equals(targetFingerprints.get(partition)))
+            {
+                changed.add(sourceValues.get(partition));
+            }
+        });
+
+        final List<String> removed = new ArrayList<>();
+        targetIds.forEach((partition, id) ->
+        {
+            if (!sourceFingerprints.containsKey(partition))
+            {
+                removed.add(id);
+            }
+        });
+
+        logger.info("Partitions of {}: {} in source, {} changed, {} removed", targetDbAndTable, sourceFingerprints.size(), changed.size(), removed.size());
+        return new Plan(changed, removed);
+    }
+
+    /**
+     * Each value of the expression must be a partition of its own, as a partition is replaced or dropped as a whole
+     *
+     * @param expression   The configured partition expression
+     * @param partitionKey The partition key of the table in <code>system.tables</code>, or null if there is no such table
+     * @param table        The table, for the error message
+     */
+    static void checkPartitionKey(final String expression, final String partitionKey, final String table)
+    {
+        if (partitionKey == null)
+        {
+            throw new IllegalStateException("Table " + table + " does not exist");
+        }
+        if (!normalize(expression).equals(normalize(partitionKey)))
+        {
+            throw new IllegalStateException("The partitioning expression '" + expression + "' is not the partition key of " + table + ", which is "
+                    + (partitionKey.isEmpty() ? "not partitioned" : "partitioned by '" + partitionKey + "'")
+                    + ". Replacing or dropping a partition would also replace or drop rows of other values of the expression");
+        }
+    }
+
+    private static String normalize(final String expression)
+    {
+        return expression.replaceAll("[\\s`]", "");
+    }
+
+    /**
+     * @return The value of a partition as returned by MySQL, as text in the format of <code>toString()</code> in ClickHouse
+     */
+    static String key(final Object value)
+    {
+        if (value instanceof Timestamp)
+        {
+            return key(((Timestamp) value).toLocalDateTime());
+        }
+        else if (value instanceof LocalDateTime)
+        {
+            final LocalDateTime dateTime = (LocalDateTime) value;
+            final String text = DATE_TIME.format(dateTime);
+            return dateTime.getNano() == 0 ? text : text + new BigDecimal(dateTime.getNano()).movePointLeft(9).stripTrailingZeros().toPlainString().substring(1);
+        }
+        else if (value instanceof java.sql.Date)
+        {
+            return ((java.sql.Date) value).toLocalDate().toString();
+        }
+        else if (value instanceof LocalDate)
+        {
+            return value.toString();
+        }
+        else if (value instanceof BigDecimal)
+        {
+            final BigDecimal decimal = ((BigDecimal) value).stripTrailingZeros();
+            return decimal.signum() == 0 ? "0" : decimal.toPlainString();
+        }
+        else if (value instanceof byte[])
+        {
+            return new String((byte[]) value, StandardCharsets.UTF_8);
+        }
+        return String.valueOf(value);
+    }
+
+    private static String first(final Map<String, String> fingerprints)
+    {
+        return fingerprints.isEmpty() ? "none" : "'" + fingerprints.keySet().iterator().next() + "'";
+    }
+
+    /**
+     * @return A MySQL predicate on the source query selecting the rows of the given partitions
+     */
+    String getSourcePredicate(final List<Object> partitions, final Function<Object, String> literal)
+    {
+        final StringJoiner values = new StringJoiner(", ");
+        boolean includesNull = false;
+        for (final Object value : partitions)
+        {
+            if (value != null)
+            {
+                values.add(literal.apply(value));
+            }
+            else
+            {
+                includesNull = true;
+            }
+        }
+
+        final String expression = "(" + partitioning.getSourceExpression() + ")";
+        final String predicate = values.length() > 0 ? expression + " IN (" + values + ")" : "FALSE";
+        return includesNull ? "(" + predicate + " OR " + expression + " IS NULL)" : predicate;
+    }
+
+    static class Plan
+    {
+        private final List<Object> changed;
+        private final List<String> removedIds;
+
+        Plan(final List<Object> changed, final List<String> removedIds)
+        {
+            this.changed = changed;
+            this.removedIds = removedIds;
+        }
+
+        /**
+         * @return The partition values, as returned by MySQL, of the partitions to reload
+         */
+        List<Object> getChanged()
+        {
+            return changed;
+        }
+
+        /**
+         * @return The ClickHouse partition ids of the partitions no longer in the source
+         */
+        List<String> getRemovedIds()
+        {
+            return removedIds;
+        }
+    }
+}
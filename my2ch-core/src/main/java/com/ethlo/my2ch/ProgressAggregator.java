@@ -0,0 +1,75 @@
+package com.ethlo.my2ch;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Function;
+
+import com.ethlo.clackshack.model.QueryProgress;
+
+/**
+ * Sums up the progress of concurrently running chunks and reports it as one to the listener
+ */
+class ProgressAggregator
+{
+    private final AtomicLongArray rows;
+    private final AtomicLongArray bytes;
+    private final Function<TransferProgress, Boolean> listener;
+    private volatile boolean aborted;
+
+    ProgressAggregator(final int chunks, final Function<TransferProgress, Boolean> listener)
+    {
+        this.rows = new AtomicLongArray(chunks);
+        this.bytes = new AtomicLongArray(chunks);
+        this.listener = listener;
+    }
+
+    boolean update(final int chunk, final QueryProgress progress)
+    {
+        return update(chunk, progress.getReadRows(), progress.getReadBytes());
+    }
+
+    boolean update(final int chunk, final long chunkRows, final long chunkBytes)
+    {
+        rows.set(chunk, chunkRows);
+        bytes.set(chunk, chunkBytes);
+        if (aborted)
+        {
+            return false;
+        }
+
+        final boolean proceed;
+        synchronized (this)
+        {
+            proceed = listener.apply(new TransferProgress(sum(rows), sum(bytes)));
+        }
+        if (!proceed)
+        {
+            abort();
+        }
+        return proceed;
+    }
+
+    void abort()
+    {
+        this.aborted = true;
+    }
+
+    boolean isAborted()
+    {
+        return aborted;
+    }
+
+    long getRows(final int chunk)
+    {
+        return rows.get(chunk);
+    }
+
+    private static long sum(final AtomicLongArray values)
+    {
+        long total = 0;
+        for (int i = 0; i < values.length(); i++)
+        {
+            total += values.get(i);
+        }
+        return total;
+    }
+}
@@ -0,0 +1,248 @@
+package com.ethlo.my2ch;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.util.Assert;
+
+import com.ethlo.clackshack.ClackShack;
+import com.ethlo.my2ch.config.Reconcile;
+import com.ethlo.my2ch.state.StateStore;
+
+/**
+ * Finds the key ranges where the source and the ClickHouse table differ, by comparing the row count and {@link RowChecksum}
+ * of sub-ranges, and splitting the differing ones further until they are small enough to transfer again.
+ * <p>
+ * A pass covers the key range holding at most the configured number of rows on either side, found by walking the index from
+ * the cursor, so a matching range is not aggregated all the way to the max key. Ranges are visited in ascending key order, and
+ * a pass also stops after the configured number of comparisons. The lowest key not yet reconciled is kept in the state store,
+ * so the next pass continues from there, and starts over at the lowest key once the whole table is reconciled.
+ */
+class RangeReconciler
+{
+    private static final Logger logger = LoggerFactory.getLogger(RangeReconciler.class);
+    private static final String CURSOR_KEY = "reconcile_cursor";
+
+    private final NamedParameterJdbcTemplate tpl;
+    private final ClackShack clackShack;
+    private final StateStore stateStore;
+    private final Reconcile settings;
+    private final String alias;
+    private final String key;
+    private final List<String> checksumColumns;
+
+    RangeReconciler(final NamedParameterJdbcTemplate tpl, final ClackShack clackShack, final StateStore stateStore, final Reconcile settings, final String alias, final String key)
+    {
+        this.tpl = tpl;
+        this.clackShack = clackShack;
+        this.stateStore = stateStore;
+        this.settings = settings;
+        this.alias = alias;
+        this.key = key;
+        this.checksumColumns = !settings.getChecksumColumns().isEmpty() ? settings.getChecksumColumns() : Collections.singletonList(key);
+    }
+
+    /**
+     * @param sourceRelation The MySQL table or derived table to compare
+     * @param targetRelation The ClickHouse table or subquery to compare
+     * @param repair         Transfers a differing range again
+     */
+    ReconcileResult run(final String sourceRelation, final String targetRelation, final RangeRepair repair)
+    {
+        final Optional<long[]> bounds = getBounds(sourceRelation, targetRelation);
+        if (bounds.isEmpty())
+        {
+            stateStore.remove(alias, CURSOR_KEY);
+            return new ReconcileResult(0, 0, 0, true);
+        }
+
+        final long min = bounds.get()[0];
+        final long max = bounds.get()[1];
+        final long start = stateStore.get(alias, CURSOR_KEY).map(Long::parseLong).filter(cursor -> cursor > min && cursor <= max).orElse(min);
+        final long end = getPassEnd(sourceRelation, targetRelation, start, max);
+        logger.debug("Reconciling {} on {} from {} to {}", alias, key, start, end - 1);
+
+        final Deque<KeyRange> pending = new ArrayDeque<>();
+        pending.push(new KeyRange(start, end));
+        int comparisons = 0;
+        int repairedRanges = 0;
+        long repairedRows = 0;
+        while (!pending.isEmpty() && comparisons < settings.getMaxComparisons())
+        {
+            final KeyRange range = pending.pop();
+            final List<KeyRange> parts = ChunkPlanner.split(range.getFrom(), range.getTo() - 1, settings.getFanout());
+            final Map<Integer, Bucket> source = fingerprintSource(sourceRelation, range, parts);
+            final Map<Integer, Bucket> target = fingerprintTarget(targetRelation, range, parts);
+            comparisons++;
+
+            final List<KeyRange> differing = new ArrayList<>();
+            for (int i = 0; i < parts.size(); i++)
+            {
+                final Bucket sourceBucket = source.getOrDefault(i, Bucket.EMPTY);
+                final Bucket targetBucket = target.getOrDefault(i, Bucket.EMPTY);
+                if (sourceBucket.fingerprint.equals(targetBucket.fingerprint))
+                {
+                    continue;
+                }
+
+                final KeyRange part = parts.get(i);
+                if (Math.max(sourceBucket.rows, targetBucket.rows) <= settings.getLeafRows() || part.size() == 1)
+                {
+                    logger.info("Reconciling {}: range {} of {} differs ({} rows in source, {} in target), transferring it again",
+                            alias, part, key, sourceBucket.rows, targetBucket.rows);
+                    repairedRows += repair.repair(part);
+                    repairedRanges++;
+                }
+                else
+                {
+                    differing.add(part);
+                }
+            }
+
+            // Depth first, keeping the lowest pending range on top
+            for (int i = differing.size() - 1; i >= 0; i--)
+            {
+                pending.push(differing.get(i));
+            }
+        }
+
+        final boolean complete = pending.isEmpty() && end > max;
+        if (complete)
+        {
+            stateStore.remove(alias, CURSOR_KEY);
+        }
+        else
+        {
+            stateStore.put(alias, CURSOR_KEY, Long.toString(!pending.isEmpty() ? pending.peek().getFrom() : end));
+        }
+
+        final ReconcileResult result = new ReconcileResult(comparisons, repairedRanges, repairedRows, complete);
+        logger.info("Reconciled {}: {}", alias, result);
+        return result;
+    }
+
+    private Optional<long[]> getBounds(final String sourceRelation, final String targetRelation)
+    {
+        final Map<String, Object> source = tpl.queryForMap("SELECT MIN(" + key + ") AS min_key, MAX(" + key + ") AS max_key FROM " + sourceRelation, Collections.emptyMap());
+        final Map<String, Object> target = clackShack.query("SELECT toInt64(min(" + key + ")) AS min_key, toInt64(max(" + key + ")) AS max_key, count() AS rows FROM " + targetRelation)
+                .asMap().iterator().next();
+
+        Long min = toLong(source.get("min_key"));
+        Long max = toLong(source.get("max_key"));
+        if (((Number) target.get("rows")).longValue() > 0)
+        {
+            final long targetMin = ((Number) target.get("min_key")).longValue();
+            final long targetMax = ((Number) target.get("max_key")).longValue();
+            min = min != null ? Math.min(min, targetMin) : targetMin;
+            max = max != null ? Math.max(max, targetMax) : targetMax;
+        }
+        return min != null ? Optional.of(new long[]{min, max}) : Optional.empty();
+    }
+
+    /**
+     * @return The exclusive end of the range to compare in this pass, so that neither side has more than the configured number
+     * of rows in it
+     */
+    private long getPassEnd(final String sourceRelation, final String targetRelation, final long start, final long max)
+    {
+        final String predicate = key + " >= " + start + " ORDER BY " + key + " LIMIT 1 OFFSET " + settings.getMaxRangeRows();
+        final List<Long> source = tpl.queryForList("SELECT " + key + " FROM " + sourceRelation + " WHERE " + predicate, Collections.emptyMap(), Long.class);
+        final List<Map<String, Object>> target = clackShack.query("SELECT toInt64(" + key + ") AS key FROM " + targetRelation + " WHERE " + predicate).asMap();
+        return passEnd(start, max, !source.isEmpty() ? source.get(0) : null, !target.isEmpty() ? ((Number) target.get(0).get("key")).longValue() : null);
+    }
+
+    /**
+     * @param sourceLimit The first key in the source beyond the rows of a pass, or null if there are fewer rows
+     * @param targetLimit The first key in the target beyond the rows of a pass, or null if there are fewer rows
+     * @return The exclusive end of the range of a pass, covering at least the start key
+     */
+    static long passEnd(final long start, final long max, final Long sourceLimit, final Long targetLimit)
+    {
+        long end = max + 1;
+        if (sourceLimit != null)
+        {
+            end = Math.min(end, sourceLimit);
+        }
+        if (targetLimit != null)
+        {
+            end = Math.min(end, targetLimit);
+        }
+        return Math.max(end, start + 1);
+    }
+
+    private Map<Integer, Bucket> fingerprintSource(final String relation, final KeyRange range, final List<KeyRange> parts)
+    {
+        final Map<Integer, Bucket> result = new HashMap<>();
+        tpl.query("SELECT " + bucket(parts) + " AS my2ch_bucket, COUNT(*) AS my2ch_rows, " + RowChecksum.mysql(checksumColumns) + " AS my2ch_checksum FROM "
+                + relation + " WHERE " + range.toPredicate(key) + " GROUP BY my2ch_bucket", Collections.emptyMap(), rs ->
+        {
+            result.put(rs.getInt(1), new Bucket(rs.getLong(2), rs.getString(3)));
+        });
+        return result;
+    }
+
+    private Map<Integer, Bucket> fingerprintTarget(final String relation, final KeyRange range, final List<KeyRange> parts)
+    {
+        final Map<Integer, Bucket> result = new HashMap<>();
+        clackShack.query("SELECT " + bucket(parts) + " AS bucket, count() AS rows, " + RowChecksum.clickHouse(checksumColumns) + " AS checksum FROM "
+                        + relation + " WHERE " + range.toPredicate(key) + " GROUP BY bucket")
+                .asMap()
+                .forEach(row -> result.put(((Number) row.get("bucket")).intValue(), new Bucket(((Number) row.get("rows")).longValue(), String.valueOf(row.get("checksum")))));
+        return result;
+    }
+
+    /**
+     * @return An expression giving the index of the part the key falls into, valid in both MySQL and ClickHouse
+     */
+    private String bucket(final List<KeyRange> parts)
+    {
+        final StringBuilder expression = new StringBuilder("CASE");
+        for (int i = 0; i < parts.size() - 1; i++)
+        {
+            expression.append(" WHEN ").append(key).append(" < ").append(parts.get(i).getTo()).append(" THEN ").append(i);
+        }
+        return expression.append(" ELSE ").append(parts.size() - 1).append(" END").toString();
+    }
+
+    private Long toLong(final Object value)
+    {
+        if (value == null)
+        {
+            return null;
+        }
+        Assert.isTrue(value instanceof Number, "Reconciling on column " + key + " requires a numeric key");
+        return ((Number) value).longValue();
+    }
+
+    private static class Bucket
+    {
+        private static final Bucket EMPTY = new Bucket(0, "0");
+
+        private final long rows;
+        private final String fingerprint;
+
+        Bucket(final long rows, final String checksum)
+        {
+            this.rows = rows;
+            this.fingerprint = RowChecksum.fingerprint(rows, checksum);
+        }
+    }
+
+    @FunctionalInterface
+    interface RangeRepair
+    {
+        /**
+         * @return The number of rows transferred
+         */
+        long repair(KeyRange range);
+    }
+}
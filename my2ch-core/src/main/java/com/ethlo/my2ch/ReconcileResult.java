@@ -0,0 +1,63 @@
+package com.ethlo.my2ch;
+
+/**
+ * The outcome of one reconciliation pass
+ */
+public class ReconcileResult
+{
+    private final int comparisons;
+    private final int repairedRanges;
+    private final long repairedRows;
+    private final boolean complete;
+
+    public ReconcileResult(final int comparisons, final int repairedRanges, final long repairedRows, final boolean complete)
+    {
+        this.comparisons = comparisons;
+        this.repairedRanges = repairedRanges;
+        this.repairedRows = repairedRows;
+        this.complete = complete;
+    }
+
+    /**
+     * @return The number of ranges compared between source and target
+     */
+    public int getComparisons()
+    {
+        return comparisons;
+    }
+
+    /**
+     * @return The number of differing ranges that were transferred again
+     */
+    public int getRepairedRanges()
+    {
+        return repairedRanges;
+    }
+
+    /**
+     * @return The number of rows transferred to repair the differing ranges
+     */
+    public long getRepairedRows()
+    {
+        return repairedRows;
+    }
+
+    /**
+     * @return Whether the pass reached the end of the key space, rather than stopping at the comparison limit
+     */
+    public boolean isComplete()
+    {
+        return complete;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "ReconcileResult{" +
+                "comparisons=" + comparisons +
+                ", repairedRanges=" + repairedRanges +
+                ", repairedRows=" + repairedRows +
+                ", complete=" + complete +
+                '}';
+    }
+}
@@ -0,0 +1,41 @@
+package com.ethlo.my2ch;
+
+import java.math.BigInteger;
+import java.util.List;
+import java.util.StringJoiner;
+
+/**
+ * Aggregate checksums of a set of rows that MySQL and ClickHouse compute the same way: the sum of the CRC32 of the textual
+ * value of each checksum column. The columns should be integers, strings or date-times, which both format the same way.
+ */
+final class RowChecksum
+{
+    private static final BigInteger MODULUS = BigInteger.ONE.shiftLeft(64);
+
+    private RowChecksum()
+    {
+    }
+
+    static String mysql(final List<String> columns)
+    {
+        final StringJoiner sum = new StringJoiner(" + ");
+        columns.forEach(column -> sum.add("COALESCE(SUM(CRC32(" + column + ")), 0)"));
+        return sum.toString();
+    }
+
+    static String clickHouse(final List<String> columns)
+    {
+        final StringJoiner sum = new StringJoiner(" + ");
+        columns.forEach(column -> sum.add("ifNull(sum(CRC32(toString(" + column + "))), 0)"));
+        return sum.toString();
+    }
+
+    /**
+     * @return A value that is equal for equal row counts and checksums, whichever side computed them
+     */
+    static String fingerprint(final long rows, final String checksum)
+    {
+        // ClickHouse sums wrap around at 64 bits, while MySQL sums are exact
+        return rows + ":" + new BigInteger(checksum).mod(MODULUS);
+    }
+}
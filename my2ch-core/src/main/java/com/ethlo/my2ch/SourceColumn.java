@@ -0,0 +1,36 @@
+package com.ethlo.my2ch;
+
+/**
+ * A column of the source query, as described by MySQL
+ */
+public class SourceColumn
+{
+    private final String name;
+    private final String type;
+    private final boolean nullable;
+
+    public SourceColumn(final String name, final String type, final boolean nullable)
+    {
+        this.name = name;
+        this.type = type;
+        this.nullable = nullable;
+    }
+
+    public String getName()
+    {
+        return name;
+    }
+
+    /**
+     * @return The MySQL column type, like <code>int(10) unsigned</code>
+     */
+    public String getType()
+    {
+        return type;
+    }
+
+    public boolean isNullable()
+    {
+        return nullable;
+    }
+}
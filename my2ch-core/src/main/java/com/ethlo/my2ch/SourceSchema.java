@@ -0,0 +1,172 @@
+package com.ethlo.my2ch;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+
+import com.ethlo.my2ch.state.StateStore;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Describes the columns of a source query. As this needs a temporary table in MySQL, the result is kept in the state store
+ * together with a fingerprint of the query and the columns of the tables it refers to, and reused until the fingerprint changes.
+ */
+class SourceSchema
+{
+    private static final Logger logger = LoggerFactory.getLogger(SourceSchema.class);
+    private static final Pattern NON_IDENTIFIER = Pattern.compile("[^A-Za-z0-9_$]+");
+    private static final String KEY = "schema";
+    private static final ObjectMapper mapper = new ObjectMapper();
+
+    private final NamedParameterJdbcTemplate tpl;
+    private final StateStore stateStore;
+    private final String alias;
+
+    SourceSchema(final NamedParameterJdbcTemplate tpl, final StateStore stateStore, final String alias)
+    {
+        this.tpl = tpl;
+        this.stateStore = stateStore;
+        this.alias = alias;
+    }
+
+    List<SourceColumn> getColumns(final String query)
+    {
+        final String fingerprint = fingerprint(query);
+        final Optional<List<SourceColumn>> cached = stateStore.get(alias, KEY).flatMap(value -> parse(value, fingerprint));
+        if (cached.isPresent())
+        {
+            logger.debug("Using cached column definitions for {}", alias);
+            return cached.get();
+        }
+
+        final List<SourceColumn> columns = describe(query);
+        stateStore.put(alias, KEY, format(fingerprint, columns));
+        return columns;
+    }
+
+    private List<SourceColumn> describe(final String query)
+    {
+        final String tmpTableName = "tmp_" + alias;
+
+        // Temporary tables are only visible to the connection that created them
+        return tpl.getJdbcTemplate().execute((ConnectionCallback<List<SourceColumn>>) connection ->
+        {
+            try (final Statement statement = connection.createStatement())
+            {
+                statement.execute("DROP TABLE IF EXISTS " + tmpTableName);
+                statement.execute("CREATE TEMPORARY TABLE `" + tmpTableName + "` AS " + query + " LIMIT 0");
+
+                final List<SourceColumn> columns = new ArrayList<>();
+                try (final ResultSet rs = statement.executeQuery("DESC " + tmpTableName))
+                {
+                    while (rs.next())
+                    {
+                        columns.add(new SourceColumn(rs.getString(1), rs.getString(2), "YES".equalsIgnoreCase(rs.getString(3))));
+                    }
+                }
+                statement.execute("DROP TEMPORARY TABLE IF EXISTS " + tmpTableName);
+                return columns;
+            }
+        });
+    }
+
+    private String fingerprint(final String query)
+    {
+        // Every word of the query is a candidate table name, as matching too many tables is harmless
+        final Set<String> words = new LinkedHashSet<>(Arrays.asList(NON_IDENTIFIER.split(query)));
+        words.remove("");
+
+        final MessageDigest digest = sha256();
+        digest.update(query.getBytes(StandardCharsets.UTF_8));
+        tpl.query("SELECT TABLE_SCHEMA, TABLE_NAME, COLUMN_NAME, COLUMN_TYPE, IS_NULLABLE FROM information_schema.columns " +
+                        "WHERE TABLE_NAME IN (:tables) AND TABLE_SCHEMA NOT IN ('mysql', 'information_schema', 'performance_schema', 'sys') " +
+                        "ORDER BY TABLE_SCHEMA, TABLE_NAME, ORDINAL_POSITION",
+                Collections.singletonMap("tables", words),
+                rs ->
+                {
+                    for (int i = 1; i <= 5; i++)
+                    {
+                        digest.update((byte) 0);
+                        digest.update(rs.getString(i).getBytes(StandardCharsets.UTF_8));
+                    }
+                });
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    private static MessageDigest sha256()
+    {
+        try
+        {
+            return MessageDigest.getInstance("SHA-256");
+        }
+        catch (NoSuchAlgorithmException exc)
+        {
+            throw new IllegalStateException(exc);
+        }
+    }
+
+    private static String format(final String fingerprint, final List<SourceColumn> columns)
+    {
+        final List<Object[]> values = new ArrayList<>(columns.size());
+        for (final SourceColumn column : columns)
+        {
+            values.add(new Object[]{column.getName(), column.getType(), column.isNullable()});
+        }
+
+        final Map<String, Object> state = new LinkedHashMap<>();
+        state.put("fingerprint", fingerprint);
+        state.put("columns", values);
+        try
+        {
+            return mapper.writeValueAsString(state);
+        }
+        catch (JsonProcessingException exc)
+        {
+            throw new IllegalStateException(exc);
+        }
+    }
+
+    private Optional<List<SourceColumn>> parse(final String value, final String fingerprint)
+    {
+        try
+        {
+            final JsonNode state = mapper.readTree(value);
+            if (!fingerprint.equals(state.path("fingerprint").asText()))
+            {
+                return Optional.empty();
+            }
+
+            final List<SourceColumn> columns = new ArrayList<>();
+            for (final JsonNode column : state.path("columns"))
+            {
+                columns.add(new SourceColumn(column.get(0).asText(), column.get(1).asText(), column.get(2).asBoolean()));
+            }
+            return Optional.of(columns);
+        }
+        catch (JsonProcessingException exc)
+        {
+            logger.warn("Ignoring unreadable cached column definitions for {}: {}", alias, exc.getMessage());
+            return Optional.empty();
+        }
+    }
+}
@@ -0,0 +1,282 @@
+package com.ethlo.my2ch;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import com.ethlo.my2ch.config.MysqlConfig;
+import com.ethlo.my2ch.config.Throttle;
+
+/**
+ * Governs the load a transfer puts on its MySQL source. The health of the server is sampled through the data source of
+ * the transfer, as the highest of <code>Threads_running</code>, replication lag and probe latency relative to their limits:
+ * <ul>
+ *     <li>Healthy: chunks run with the configured parallelism</li>
+ *     <li>Degraded (above {@value #DEGRADED_RATIO} of a limit): one chunk at a time</li>
+ *     <li>Overloaded: new chunks wait, and streamed chunks pause between blocks, until the server recovers</li>
+ * </ul>
+ * In addition, the chunks running against a host can be capped across all aliases, and the rows read per alias can be rate limited.
+ * All aliases reading from a host must agree on its <code>host-concurrency</code>. The rate limit allows a burst of at most
+ * {@link #BURST} worth of rows, so the idle time between runs does not add up to a credit of unthrottled rows.
+ */
+class SourceThrottle
+{
+    private static final Logger logger = LoggerFactory.getLogger(SourceThrottle.class);
+    private static final double DEGRADED_RATIO = 0.75;
+    private static final Duration BURST = Duration.ofSeconds(1);
+    private static final Map<String, HostPermit> hostPermits = new ConcurrentHashMap<>();
+
+    private final JdbcTemplate jdbcTemplate;
+    private final Throttle settings;
+    private final String alias;
+    private final Semaphore hostPermit;
+
+    private int running;
+    private Health health = Health.HEALTHY;
+    private long lastChecked;
+    private boolean replicaStatusAvailable = true;
+
+    // The time at which the rows read so far are due at the rate limit, which is never behind the current time by more than the burst
+    private long theoreticalArrival;
+
+    enum Health
+    {
+        HEALTHY, DEGRADED, OVERLOADED
+    }
+
+    /**
+     * @param settings The limits, or null to never throttle
+     */
+    SourceThrottle(final JdbcTemplate jdbcTemplate, final Throttle settings, final MysqlConfig mysql, final String alias)
+    {
+        this.jdbcTemplate = jdbcTemplate;
+        this.settings = settings;
+        this.alias = alias;
+        this.hostPermit = settings != null && settings.getHostConcurrency() != null
+                ? getHostPermit(mysql.getHost() + ":" + mysql.getPort(), settings.getHostConcurrency(), alias)
+                : null;
+    }
+
+    private static Semaphore getHostPermit(final String host, final int concurrency, final String alias)
+    {
+        final HostPermit permit = hostPermits.computeIfAbsent(host, h -> new HostPermit(concurrency, alias));
+        if (permit.concurrency != concurrency)
+        {
+            throw new IllegalArgumentException("The host-concurrency of " + alias + " is " + concurrency + ", while " + permit.alias
+                    + " has " + permit.concurrency + " for the same host " + host + ". The aliases of a host must have the same host-concurrency");
+        }
+        return permit.semaphore;
+    }
+
+    /**
+     * Waits until the source has capacity for another chunk
+     */
+    void acquire()
+    {
+        if (settings == null)
+        {
+            return;
+        }
+
+        if (hostPermit != null)
+        {
+            hostPermit.acquireUninterruptibly();
+        }
+        try
+        {
+            final long started = System.nanoTime();
+            synchronized (this)
+            {
+                while (true)
+                {
+                    final Health current = getHealth();
+                    if (current == Health.HEALTHY || (current == Health.DEGRADED && running == 0))
+                    {
+                        running++;
+                        return;
+                    }
+                    checkPause(started);
+                    wait(settings.getCheckInterval().toMillis());
+                }
+            }
+        }
+        catch (InterruptedException exc)
+        {
+            releaseHost();
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for the source of " + alias + " to recover", exc);
+        }
+        catch (RuntimeException exc)
+        {
+            releaseHost();
+            throw exc;
+        }
+    }
+
+    /**
+     * Releases the capacity taken by {@link #acquire()}
+     */
+    void release()
+    {
+        if (settings == null)
+        {
+            return;
+        }
+
+        synchronized (this)
+        {
+            running--;
+            notifyAll();
+        }
+        releaseHost();
+    }
+
+    /**
+     * Accounts for rows read, pausing the calling thread as needed to stay within the rate limit, or while the source is overloaded
+     */
+    void pace(final long rows)
+    {
+        if (settings == null)
+        {
+            return;
+        }
+
+        try
+        {
+            final long started = System.nanoTime();
+            while (getHealth() == Health.OVERLOADED)
+            {
+                checkPause(started);
+                Thread.sleep(settings.getCheckInterval().toMillis());
+            }
+
+            final Long maxRowsPerSecond = settings.getMaxRowsPerSecond();
+            if (maxRowsPerSecond != null)
+            {
+                final long delayNanos;
+                synchronized (this)
+                {
+                    final long now = System.nanoTime();
+                    final long earliest = now - BURST.toNanos();
+                    if (theoreticalArrival == 0 || theoreticalArrival - earliest < 0)
+                    {
+                        theoreticalArrival = earliest;
+                    }
+                    theoreticalArrival += rows * 1_000_000_000L / maxRowsPerSecond;
+                    delayNanos = theoreticalArrival - now;
+                }
+                if (delayNanos > 0)
+                {
+                    Thread.sleep(delayNanos / 1_000_000, (int) (delayNanos % 1_000_000));
+                }
+            }
+        }
+        catch (InterruptedException exc)
+        {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while throttling the transfer of " + alias, exc);
+        }
+    }
+
+    private void checkPause(final long started)
+    {
+        if (System.nanoTime() - started > settings.getMaxPause().toNanos())
+        {
+            throw new IllegalStateException("The source of " + alias + " has been overloaded for more than " + settings.getMaxPause());
+        }
+    }
+
+    private void releaseHost()
+    {
+        if (hostPermit != null)
+        {
+            hostPermit.release();
+        }
+    }
+
+    synchronized Health getHealth()
+    {
+        final long now = System.nanoTime();
+        if (lastChecked != 0 && now - lastChecked < settings.getCheckInterval().toNanos())
+        {
+            return health;
+        }
+        lastChecked = now;
+
+        final Health previous = health;
+        final double load = sampleLoad();
+        health = load >= 1 ? Health.OVERLOADED : load >= DEGRADED_RATIO ? Health.DEGRADED : Health.HEALTHY;
+        if (health != previous)
+        {
+            logger.info("Source of {} is now {} at {}% of its limits", alias, health.name().toLowerCase(), Math.round(load * 100));
+        }
+        return health;
+    }
+
+    /**
+     * @return The highest of the health measures relative to their limit
+     */
+    private double sampleLoad()
+    {
+        final List<Map<String, Object>> status = jdbcTemplate.queryForList("SHOW GLOBAL STATUS LIKE 'Threads_running'");
+        final long threadsRunning = status.isEmpty() ? 0 : Long.parseLong(status.get(0).get("Value").toString());
+        double load = threadsRunning / (double) settings.getMaxThreadsRunning();
+
+        final Long lagSeconds = getReplicationLag();
+        if (lagSeconds != null)
+        {
+            load = Math.max(load, lagSeconds * 1000D / settings.getMaxReplicationLag().toMillis());
+        }
+
+        final long started = System.nanoTime();
+        jdbcTemplate.execute(settings.getProbeQuery());
+        final long latencyNanos = System.nanoTime() - started;
+        load = Math.max(load, latencyNanos / (double) settings.getMaxProbeLatency().toNanos());
+
+        logger.debug("Source of {}: {} threads running, replication lag {} seconds, probe latency {} ms", alias, threadsRunning, lagSeconds, latencyNanos / 1_000_000);
+        return load;
+    }
+
+    private Long getReplicationLag()
+    {
+        if (!replicaStatusAvailable)
+        {
+            return null;
+        }
+
+        try
+        {
+            final List<Map<String, Object>> status = jdbcTemplate.queryForList("SHOW SLAVE STATUS");
+            final Object lag = status.isEmpty() ? null : status.get(0).get("Seconds_Behind_Master");
+            return lag != null ? ((Number) lag).longValue() : null;
+        }
+        catch (DataAccessException exc)
+        {
+            // Typically lacking the REPLICATION CLIENT privilege
+            logger.warn("Not checking replication lag of the source of {}: {}", alias, exc.getMessage());
+            replicaStatusAvailable = false;
+            return null;
+        }
+    }
+
+    private static class HostPermit
+    {
+        private final Semaphore semaphore;
+        private final int concurrency;
+        private final String alias;
+
+        HostPermit(final int concurrency, final String alias)
+        {
+            this.semaphore = new Semaphore(concurrency, true);
+            this.concurrency = concurrency;
+            this.alias = alias;
+        }
+    }
+}
@@ -0,0 +1,179 @@
+package com.ethlo.my2ch;
+
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+
+import com.ethlo.my2ch.clickhouse.ClickHouseHttpClient;
+import com.ethlo.my2ch.clickhouse.RowBinaryBuffer;
+import com.ethlo.my2ch.clickhouse.RowBinaryEncoder;
+import com.ethlo.my2ch.config.Streaming;
+
+/**
+ * Streams the result of a MySQL query row by row over JDBC and inserts it into ClickHouse in RowBinary blocks, each block
+ * sent as a request of its own, so a failed block can be retried and deduplicated on its own.
+ */
+class StreamingTransfer
+{
+    private static final Logger logger = LoggerFactory.getLogger(StreamingTransfer.class);
+    private static final int INITIAL_BUFFER_SIZE = 1024 * 1024;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ClickHouseHttpClient httpClient;
+    private final Streaming streaming;
+    private final Map<String, String> settings;
+
+    /**
+     * @param settings The ClickHouse settings passed with each insert
+     */
+    StreamingTransfer(final JdbcTemplate jdbcTemplate, final ClickHouseHttpClient httpClient, final Streaming streaming, final Map<String, String> settings)
+    {
+        this.jdbcTemplate = jdbcTemplate;
+        this.httpClient = httpClient;
+        this.streaming = streaming;
+        this.settings = settings;
+    }
+
+    /**
+     * @param query       The MySQL query to stream
+     * @param targetTable The qualified name of the ClickHouse table
+     * @param columnTypes The ClickHouse type of each column of the target table, by name
+     * @param zoneId      The zone of the ClickHouse server, to interpret date-times in as ClickHouse would
+     * @param dedupToken  The prefix of the deduplication token of each block, or null to not deduplicate
+     * @param listener    Receives the total number of rows and bytes after every block. Returning false stops the transfer
+     * @return The number of rows transferred
+     */
+    long transfer(final String query, final String targetTable, final Map<String, String> columnTypes, final ZoneId zoneId, final String dedupToken, final ProgressListener listener)
+    {
+        logger.debug("Streaming query to ClickHouse table {}: {}", targetTable, query);
+        final BlockWriter writer = new BlockWriter(targetTable, columnTypes, zoneId, dedupToken, listener);
+        try
+        {
+            jdbcTemplate.query(query, writer);
+            writer.flush();
+        }
+        catch (TransferAbortedException exc)
+        {
+            logger.info("Streaming transfer to {} stopped by listener after {} rows", targetTable, writer.rows);
+        }
+        return writer.rows;
+    }
+
+    @FunctionalInterface
+    interface ProgressListener
+    {
+        boolean progress(long rows, long bytes);
+    }
+
+    private static class TransferAbortedException extends RuntimeException
+    {
+        TransferAbortedException()
+        {
+            super(null, null, false, false);
+        }
+    }
+
+    private class BlockWriter implements RowCallbackHandler
+    {
+        private final String targetTable;
+        private final Map<String, String> columnTypes;
+        private final ZoneId zoneId;
+        private final String dedupToken;
+        private final ProgressListener listener;
+        private final RowBinaryBuffer buffer = new RowBinaryBuffer(INITIAL_BUFFER_SIZE);
+        private final RowBinaryBuffer compressed = new RowBinaryBuffer(INITIAL_BUFFER_SIZE);
+
+        private RowBinaryEncoder encoder;
+        private String insertQuery;
+        private Object[] values;
+        private int blockRows;
+        private int blocks;
+        private long rows;
+        private long bytes;
+
+        BlockWriter(final String targetTable, final Map<String, String> columnTypes, final ZoneId zoneId, final String dedupToken, final ProgressListener listener)
+        {
+            this.targetTable = targetTable;
+            this.columnTypes = columnTypes;
+            this.zoneId = zoneId;
+            this.dedupToken = dedupToken;
+            this.listener = listener;
+        }
+
+        @Override
+        public void processRow(final ResultSet rs) throws SQLException
+        {
+            if (encoder == null)
+            {
+                initialize(rs.getMetaData());
+            }
+
+            for (int i = 0; i < values.length; i++)
+            {
+                values[i] = rs.getObject(i + 1);
+            }
+            encoder.encode(values, buffer);
+            rows++;
+
+            if (++blockRows >= streaming.getBlockRows())
+            {
+                flush();
+            }
+        }
+
+        private void initialize(final ResultSetMetaData metaData) throws SQLException
+        {
+            final List<String> names = new ArrayList<>(metaData.getColumnCount());
+            final List<String> types = new ArrayList<>(metaData.getColumnCount());
+            for (int i = 1; i <= metaData.getColumnCount(); i++)
+            {
+                final String name = metaData.getColumnLabel(i);
+                final String type = columnTypes.get(name);
+                if (type == null)
+                {
+                    throw new IllegalStateException("Column " + name + " does not exist in ClickHouse table " + targetTable);
+                }
+                names.add("`" + name + "`");
+                types.add(type);
+            }
+            this.encoder = new RowBinaryEncoder(types, zoneId);
+            this.values = new Object[names.size()];
+            this.insertQuery = "INSERT INTO " + targetTable + " (" + String.join(", ", names) + ")";
+        }
+
+        void flush()
+        {
+            if (blockRows == 0)
+            {
+                return;
+            }
+
+            // The same rows read again in the same order form the same blocks, so a repeated block gets the same token
+            final Map<String, String> blockSettings = new LinkedHashMap<>(settings);
+            if (dedupToken != null)
+            {
+                blockSettings.put("insert_deduplication_token", dedupToken + "-" + blocks);
+            }
+            httpClient.insert(insertQuery + " FORMAT RowBinary", blockSettings, buffer, streaming.isCompress(), compressed);
+            blocks++;
+            bytes += buffer.size();
+            buffer.reset();
+            blockRows = 0;
+
+            if (!listener.progress(rows, bytes))
+            {
+                throw new TransferAbortedException();
+            }
+        }
+    }
+}
@@ -0,0 +1,191 @@
+package com.ethlo.my2ch;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.function.Supplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.ethlo.my2ch.state.StateStore;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * The progress of a resumable transfer, kept in the state store until the transfer completes. It records the pinned source
+ * query and its chunks, so a restarted transfer reads exactly the same rows, and which chunks are already committed.
+ * <p>
+ * Each insert carries an <code>insert_deduplication_token</code> derived from the transfer, chunk and block, so blocks of
+ * a chunk that were inserted before a failure are discarded by ClickHouse when the chunk is transferred again.
+ */
+class TransferCheckpoint
+{
+    private static final Logger logger = LoggerFactory.getLogger(TransferCheckpoint.class);
+    private static final ObjectMapper mapper = new ObjectMapper();
+    private static final String KEY = "checkpoint";
+
+    private final StateStore stateStore;
+    private final String alias;
+    private final String configuredQuery;
+    private final String run;
+    private final String query;
+    private final String watermark;
+    private final Set<Integer> completed;
+    private List<String> chunks;
+
+    private TransferCheckpoint(final StateStore stateStore, final String alias, final String configuredQuery, final String run, final String query, final String watermark, final List<String> chunks, final Set<Integer> completed)
+    {
+        this.stateStore = stateStore;
+        this.alias = alias;
+        this.configuredQuery = configuredQuery;
+        this.run = run;
+        this.query = query;
+        this.watermark = watermark;
+        this.chunks = chunks;
+        this.completed = completed;
+    }
+
+    /**
+     * @param configuredQuery The query as configured, to discard the checkpoint if it has been changed since
+     * @return The checkpoint of the unfinished transfer of this alias, if any
+     */
+    static Optional<TransferCheckpoint> load(final StateStore stateStore, final String alias, final String configuredQuery)
+    {
+        final Optional<String> value = stateStore.get(alias, KEY);
+        if (value.isEmpty())
+        {
+            return Optional.empty();
+        }
+
+        try
+        {
+            final JsonNode state = mapper.readTree(value.get());
+            if (!configuredQuery.equals(state.path("configured_query").asText()))
+            {
+                logger.info("Not resuming the transfer of {}, as the query has changed", alias);
+                stateStore.remove(alias, KEY);
+                return Optional.empty();
+            }
+
+            List<String> chunks = null;
+            if (state.hasNonNull("chunks"))
+            {
+                chunks = new ArrayList<>();
+                for (final JsonNode chunk : state.get("chunks"))
+                {
+                    chunks.add(chunk.asText());
+                }
+            }
+
+            final Set<Integer> completed = new TreeSet<>();
+            state.path("completed").forEach(chunk -> completed.add(chunk.asInt()));
+            final String watermark = state.hasNonNull("watermark") ? state.get("watermark").asText() : null;
+            return Optional.of(new TransferCheckpoint(stateStore, alias, configuredQuery, state.path("run").asText(), state.path("query").asText(), watermark, chunks, completed));
+        }
+        catch (JsonProcessingException exc)
+        {
+            logger.warn("Ignoring unreadable checkpoint for {}: {}", alias, exc.getMessage());
+            stateStore.remove(alias, KEY);
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * @param query     The source query, with its upper bound pinned if incremental
+     * @param watermark The watermark to store once the transfer completes, or null
+     */
+    static TransferCheckpoint create(final StateStore stateStore, final String alias, final String configuredQuery, final String query, final String watermark)
+    {
+        final String run = UUID.randomUUID().toString().substring(0, 8);
+        final TransferCheckpoint checkpoint = new TransferCheckpoint(stateStore, alias, configuredQuery, run, query, watermark, null, new TreeSet<>());
+        checkpoint.save();
+        return checkpoint;
+    }
+
+    String getQuery()
+    {
+        return query;
+    }
+
+    /**
+     * @return The watermark to store once the transfer completes, or null
+     */
+    String getWatermark()
+    {
+        return watermark;
+    }
+
+    /**
+     * @param planner Splits the query into chunk predicates, on the first attempt of the transfer only
+     * @return The chunk predicates of the transfer
+     */
+    synchronized List<String> getChunks(final Supplier<List<String>> planner)
+    {
+        if (chunks == null)
+        {
+            chunks = planner.get();
+            save();
+        }
+        return chunks;
+    }
+
+    synchronized boolean isCompleted(final int chunk)
+    {
+        return completed.contains(chunk);
+    }
+
+    synchronized void completed(final int chunk)
+    {
+        completed.add(chunk);
+        save();
+    }
+
+    /**
+     * @return The deduplication token for the inserts of a chunk, stable across attempts of this transfer
+     */
+    String getToken(final int chunk)
+    {
+        return alias + "-" + run + "-" + chunk;
+    }
+
+    void remove()
+    {
+        stateStore.remove(alias, KEY);
+    }
+
+    @Override
+    public synchronized String toString()
+    {
+        return "TransferCheckpoint{" +
+                "run='" + run + '\'' +
+                ", chunks=" + (chunks != null ? chunks.size() : null) +
+                ", completed=" + completed +
+                '}';
+    }
+
+    private void save()
+    {
+        final Map<String, Object> state = new LinkedHashMap<>();
+        state.put("configured_query", configuredQuery);
+        state.put("run", run);
+        state.put("query", query);
+        state.put("watermark", watermark);
+        state.put("chunks", chunks);
+        state.put("completed", completed);
+        try
+        {
+            stateStore.put(alias, KEY, mapper.writeValueAsString(state));
+        }
+        catch (JsonProcessingException exc)
+        {
+            throw new IllegalStateException(exc);
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package com.ethlo.my2ch;
+
+import java.time.Duration;
+
+/**
+ * Receives timings and outcomes of transfers, for instance to publish them as metrics. All methods may be called concurrently.
+ */
+public interface TransferObserver
+{
+    TransferObserver NOOP = new TransferObserver()
+    {
+    };
+
+    default void phaseCompleted(String alias, TransferPhase phase, Duration elapsed)
+    {
+    }
+
+    default void progress(String alias, TransferProgress progress)
+    {
+    }
+
+    default void watermark(String alias, String watermark)
+    {
+    }
+
+    default void transferred(String alias, long rows, long bytes, Duration elapsed)
+    {
+    }
+
+    default void failed(String alias, Exception exception)
+    {
+    }
+}
@@ -0,0 +1,29 @@
+package com.ethlo.my2ch;
+
+public enum TransferPhase
+{
+    /**
+     * Creating the MySQL engine database in ClickHouse and the source view in MySQL
+     */
+    VIEW_SETUP,
+
+    /**
+     * Looking up the watermark, or creating the ClickHouse table for a full transfer
+     */
+    DDL,
+
+    /**
+     * Moving the data
+     */
+    INSERT,
+
+    /**
+     * Fetching the storage statistics of the ClickHouse table
+     */
+    STATS,
+
+    /**
+     * Running the migrations of an alias
+     */
+    MIGRATIONS
+}
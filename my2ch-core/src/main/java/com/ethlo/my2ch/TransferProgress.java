@@ -0,0 +1,32 @@
+package com.ethlo.my2ch;
+
+public class TransferProgress
+{
+    private final long readRows;
+    private final long readBytes;
+
+    public TransferProgress(final long readRows, final long readBytes)
+    {
+        this.readRows = readRows;
+        this.readBytes = readBytes;
+    }
+
+    public long getReadRows()
+    {
+        return readRows;
+    }
+
+    public long getReadBytes()
+    {
+        return readBytes;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "TransferProgress {" +
+                "readRows=" + readRows +
+                ", readBytes=" + readBytes +
+                '}';
+    }
+}
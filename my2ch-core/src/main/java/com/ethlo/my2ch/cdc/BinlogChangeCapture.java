@@ -0,0 +1,426 @@
+package com.ethlo.my2ch.cdc;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.io.UncheckedIOException;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import com.ethlo.clackshack.ClackShack;
+import com.ethlo.my2ch.clickhouse.ClickHouseHttpClient;
+import com.ethlo.my2ch.clickhouse.RowBinaryBuffer;
+import com.ethlo.my2ch.clickhouse.RowBinaryEncoder;
+import com.ethlo.my2ch.config.Cdc;
+import com.ethlo.my2ch.config.MysqlConfig;
+import com.ethlo.my2ch.config.TransferConfig;
+import com.ethlo.my2ch.state.ClickHouseStateStore;
+import com.github.shyiko.mysql.binlog.BinaryLogClient;
+import com.github.shyiko.mysql.binlog.event.DeleteRowsEventData;
+import com.github.shyiko.mysql.binlog.event.Event;
+import com.github.shyiko.mysql.binlog.event.EventData;
+import com.github.shyiko.mysql.binlog.event.EventHeaderV4;
+import com.github.shyiko.mysql.binlog.event.EventType;
+import com.github.shyiko.mysql.binlog.event.RotateEventData;
+import com.github.shyiko.mysql.binlog.event.TableMapEventData;
+import com.github.shyiko.mysql.binlog.event.UpdateRowsEventData;
+import com.github.shyiko.mysql.binlog.event.WriteRowsEventData;
+import com.github.shyiko.mysql.binlog.event.deserialization.EventDeserializer;
+
+/**
+ * Tails the MySQL row-based binlog for the table behind an alias and inserts the changes into ClickHouse in micro-batches.
+ * <p>
+ * Every change is written as a new row with a <code>_version</code> derived from its binlog position and a
+ * <code>_sign</code> of 1 for inserts/updates and -1 for deletes, so the target should be a
+ * <code>ReplacingMergeTree(_version)</code> ordered by the primary key, and be read with <code>FINAL WHERE _sign = 1</code>.
+ * Replaying a range of the binlog is therefore harmless, which is what makes resuming from the last committed position safe.
+ */
+public class BinlogChangeCapture implements AutoCloseable
+{
+    private static final Logger logger = LoggerFactory.getLogger(BinlogChangeCapture.class);
+    private static final long CONNECT_TIMEOUT_MILLIS = 30_000;
+    private static final int MAX_BUFFERED_BATCHES = 10;
+
+    private final TransferConfig config;
+    private final Cdc cdc;
+    private final NamedParameterJdbcTemplate tpl;
+    private final ClackShack clackShack;
+    private final ClickHouseHttpClient httpClient;
+    private final BinlogPositionStore positionStore;
+    private final ScheduledExecutorService flushScheduler;
+    private final RowBinaryBuffer buffer = new RowBinaryBuffer(1024 * 1024);
+    private final RowBinaryBuffer compressed = new RowBinaryBuffer(1024 * 1024);
+    private final Set<Long> tableIds = new HashSet<>();
+
+    private BinaryLogClient client;
+    private String database;
+    private List<BinlogColumn> sourceColumns;
+    private List<String> targetColumns;
+    private int[] sourceIndexes;
+    private int keyIndex;
+    private RowBinaryEncoder encoder;
+    private String insertQuery;
+
+    private String currentFile;
+    private BinlogPosition committed;
+    private BinlogPosition persisted;
+    private int bufferedRows;
+    private long firstBufferedAt;
+    private volatile boolean resyncRequested;
+
+    public BinlogChangeCapture(final TransferConfig config, final NamedParameterJdbcTemplate tpl, final ClackShack clackShack, final ClickHouseHttpClient httpClient)
+    {
+        this.config = config;
+        this.cdc = config.getSource().getCdc();
+        this.tpl = tpl;
+        this.clackShack = clackShack;
+        this.httpClient = httpClient;
+        // The position must survive restarts regardless of the configured state store, so keep it next to the data
+        this.positionStore = new BinlogPositionStore(new ClickHouseStateStore(clackShack));
+        this.flushScheduler = Executors.newSingleThreadScheduledExecutor(new CustomizableThreadFactory("my2ch-cdc-" + config.getAlias() + "-"));
+    }
+
+    /**
+     * Records the current binlog position if there is none stored yet. Must be called before the initial snapshot,
+     * so that no changes made during the snapshot are missed.
+     */
+    public void bootstrap()
+    {
+        if (positionStore.get(config.getAlias()).isEmpty())
+        {
+            final BinlogPosition position = tpl.queryForObject("SHOW MASTER STATUS", Collections.emptyMap(), (rs, rowNum) -> new BinlogPosition(rs.getString("File"), rs.getLong("Position")));
+            logger.info("No binlog position stored for {}, starting from current position {}", config.getAlias(), position);
+            positionStore.put(config.getAlias(), position);
+        }
+    }
+
+    public void start()
+    {
+        final BinlogPosition position = positionStore.get(config.getAlias())
+                .orElseThrow(() -> new IllegalStateException("No binlog position stored for " + config.getAlias() + ", call bootstrap() first"));
+        this.persisted = position;
+        this.committed = position;
+        this.currentFile = position.getFile();
+        this.database = tpl.queryForObject("SELECT DATABASE()", Collections.emptyMap(), String.class);
+        loadColumns();
+
+        final MysqlConfig mysql = config.getSource().getMysql();
+        this.client = new BinaryLogClient(mysql.getHost(), mysql.getPort(), mysql.getUsername(), mysql.getPassword());
+        client.setServerId(cdc.getServerId() != null ? cdc.getServerId() : 10_000L + Math.floorMod(config.getAlias().hashCode(), 1_000_000));
+        client.setBinlogFilename(position.getFile());
+        client.setBinlogPosition(position.getPosition());
+        client.setKeepAlive(true);
+
+        final EventDeserializer eventDeserializer = new EventDeserializer();
+        eventDeserializer.setCompatibilityMode(EventDeserializer.CompatibilityMode.DATE_AND_TIME_AS_LONG, EventDeserializer.CompatibilityMode.CHAR_AND_BINARY_AS_BYTE_ARRAY);
+        client.setEventDeserializer(eventDeserializer);
+        client.registerEventListener(this::onEvent);
+
+        final long interval = Math.max(cdc.getFlushInterval().toMillis() / 2, 10);
+        flushScheduler.scheduleWithFixedDelay(this::onTimer, interval, interval, TimeUnit.MILLISECONDS);
+
+        logger.info("Starting change capture of {}.{} for alias {} from {}", database, cdc.getTable(), config.getAlias(), position);
+        connect();
+    }
+
+    private void connect()
+    {
+        try
+        {
+            client.connect(CONNECT_TIMEOUT_MILLIS);
+        }
+        catch (IOException exc)
+        {
+            throw new UncheckedIOException(exc);
+        }
+        catch (TimeoutException exc)
+        {
+            throw new IllegalStateException("Timed out connecting to the binlog of " + config.getSource().getMysql(), exc);
+        }
+    }
+
+    private void loadColumns()
+    {
+        final Map<String, Object> params = new LinkedHashMap<>();
+        params.put("table", cdc.getTable());
+        this.sourceColumns = tpl.query("SELECT COLUMN_NAME, DATA_TYPE, COLUMN_TYPE FROM information_schema.columns " +
+                        "WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = :table ORDER BY ORDINAL_POSITION", params,
+                (rs, rowNum) -> new BinlogColumn(rs.getString(1), rs.getString(2), rs.getString(3)));
+
+        params.clear();
+        params.put("db", config.getTarget().getClickhouse().getDb());
+        params.put("table", config.getAlias());
+        final Map<String, String> targetTypes = new LinkedHashMap<>();
+        clackShack.query("SELECT name, type FROM system.columns WHERE database = :db AND table = :table ORDER BY position", params)
+                .asMap()
+                .forEach(row -> targetTypes.put(row.get("name").toString(), row.get("type").toString()));
+        if (targetTypes.isEmpty())
+        {
+            throw new IllegalStateException("Target table for " + config.getAlias() + " does not exist, run a transfer before starting change capture");
+        }
+
+        this.targetColumns = new ArrayList<>(targetTypes.keySet());
+        this.sourceIndexes = new int[targetColumns.size()];
+        for (int i = 0; i < targetColumns.size(); i++)
+        {
+            final String name = targetColumns.get(i);
+            sourceIndexes[i] = indexOf(name);
+            if (sourceIndexes[i] < 0 && !Cdc.SIGN_COLUMN.equals(name) && !Cdc.VERSION_COLUMN.equals(name))
+            {
+                throw new IllegalStateException("Column " + name + " of " + config.getAlias() + " does not exist in MySQL table " + cdc.getTable());
+            }
+        }
+        this.keyIndex = indexOf(config.getTarget().getPrimaryKey());
+        // Binlog date-times have no zone, so they are taken as local to the server, as when ClickHouse reads them from MySQL
+        final ZoneId serverZone = ZoneId.of(clackShack.query("SELECT timezone() AS tz").asMap().get(0).get("tz").toString());
+        this.encoder = new RowBinaryEncoder(new ArrayList<>(targetTypes.values()), serverZone);
+        this.insertQuery = "INSERT INTO " + config.getTarget().getClickhouse().getDb() + "." + config.getAlias()
+                + " (`" + String.join("`, `", targetColumns) + "`) FORMAT RowBinary";
+    }
+
+    private int indexOf(final String columnName)
+    {
+        for (int i = 0; i < sourceColumns.size(); i++)
+        {
+            if (sourceColumns.get(i).getName().equalsIgnoreCase(columnName))
+            {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private synchronized void onEvent(final Event event)
+    {
+        if (resyncRequested)
+        {
+            return;
+        }
+
+        final EventHeaderV4 header = event.getHeader();
+        final EventType type = header.getEventType();
+        final EventData data = event.getData();
+        if (type == EventType.ROTATE)
+        {
+            this.currentFile = ((RotateEventData) data).getBinlogFilename();
+        }
+        else if (type == EventType.TABLE_MAP)
+        {
+            final TableMapEventData tableMap = (TableMapEventData) data;
+            if (database.equalsIgnoreCase(tableMap.getDatabase()) && cdc.getTable().equalsIgnoreCase(tableMap.getTable()))
+            {
+                tableIds.add(tableMap.getTableId());
+            }
+        }
+        else if (EventType.isWrite(type))
+        {
+            final WriteRowsEventData rows = (WriteRowsEventData) data;
+            if (tableIds.contains(rows.getTableId()))
+            {
+                rows.getRows().forEach(row -> append(row, 1, header.getPosition()));
+            }
+        }
+        else if (EventType.isUpdate(type))
+        {
+            final UpdateRowsEventData rows = (UpdateRowsEventData) data;
+            if (tableIds.contains(rows.getTableId()))
+            {
+                for (final Map.Entry<Serializable[], Serializable[]> row : rows.getRows())
+                {
+                    if (keyIndex >= 0 && !Objects.deepEquals(row.getKey()[keyIndex], row.getValue()[keyIndex]))
+                    {
+                        // The key changed, so the old row must go
+                        append(row.getKey(), -1, header.getPosition());
+                    }
+                    append(row.getValue(), 1, header.getPosition());
+                }
+            }
+        }
+        else if (EventType.isDelete(type))
+        {
+            final DeleteRowsEventData rows = (DeleteRowsEventData) data;
+            if (tableIds.contains(rows.getTableId()))
+            {
+                rows.getRows().forEach(row -> append(row, -1, header.getPosition()));
+            }
+        }
+        else if (type == EventType.XID)
+        {
+            this.committed = new BinlogPosition(currentFile, header.getNextPosition());
+            flushIfDue();
+        }
+    }
+
+    private void append(final Serializable[] row, final int sign, final long position)
+    {
+        if (row.length != sourceColumns.size())
+        {
+            logger.error("Binlog row for {} has {} columns, expected {}. Is binlog_row_image=FULL and the table unchanged?", cdc.getTable(), row.length, sourceColumns.size());
+            resyncRequested = true;
+            return;
+        }
+
+        final long version = (fileSequence(currentFile) << 32) | position;
+        final Object[] values = new Object[targetColumns.size()];
+        for (int i = 0; i < values.length; i++)
+        {
+            final int sourceIndex = sourceIndexes[i];
+            if (sourceIndex >= 0)
+            {
+                values[i] = sourceColumns.get(sourceIndex).convert(row[sourceIndex]);
+            }
+            else
+            {
+                values[i] = Cdc.SIGN_COLUMN.equals(targetColumns.get(i)) ? sign : version;
+            }
+        }
+        encoder.encode(values, buffer);
+        if (bufferedRows++ == 0)
+        {
+            firstBufferedAt = System.currentTimeMillis();
+        }
+
+        if (bufferedRows > cdc.getFlushRows() * MAX_BUFFERED_BATCHES)
+        {
+            logger.error("Too many buffered changes for {}, restarting from last committed position", config.getAlias());
+            resyncRequested = true;
+        }
+    }
+
+    private static long fileSequence(final String file)
+    {
+        return Long.parseLong(file.substring(file.lastIndexOf('.') + 1));
+    }
+
+    private void onTimer()
+    {
+        try
+        {
+            if (resyncRequested)
+            {
+                resync();
+            }
+            else
+            {
+                synchronized (this)
+                {
+                    flushIfDue();
+                }
+            }
+        }
+        catch (Exception exc)
+        {
+            logger.error("Change capture of {} failed: {}", config.getAlias(), exc.getMessage(), exc);
+        }
+    }
+
+    private void flushIfDue()
+    {
+        final boolean due = bufferedRows >= cdc.getFlushRows()
+                || (bufferedRows > 0 && System.currentTimeMillis() - firstBufferedAt >= cdc.getFlushInterval().toMillis())
+                || (bufferedRows == 0 && !committed.equals(persisted));
+        if (due)
+        {
+            try
+            {
+                flush();
+            }
+            catch (RuntimeException exc)
+            {
+                // Keep the buffer and retry on the next flush
+                logger.warn("Unable to flush {} changes for {}: {}", bufferedRows, config.getAlias(), exc.getMessage());
+            }
+        }
+    }
+
+    private void flush()
+    {
+        if (bufferedRows > 0)
+        {
+            httpClient.insert(insertQuery, buffer, true, compressed);
+            logger.debug("Flushed {} changes for {}", bufferedRows, config.getAlias());
+            buffer.reset();
+            bufferedRows = 0;
+        }
+
+        // Only positions at transaction boundaries are persisted, so a restart never skips part of a transaction
+        if (!committed.equals(persisted))
+        {
+            positionStore.put(config.getAlias(), committed);
+            persisted = committed;
+        }
+    }
+
+    private void resync() throws IOException
+    {
+        client.disconnect();
+        synchronized (this)
+        {
+            buffer.reset();
+            bufferedRows = 0;
+            tableIds.clear();
+            loadColumns();
+            final BinlogPosition position = positionStore.get(config.getAlias()).orElse(persisted);
+            this.committed = position;
+            this.persisted = position;
+            this.currentFile = position.getFile();
+            client.setBinlogFilename(position.getFile());
+            client.setBinlogPosition(position.getPosition());
+            resyncRequested = false;
+        }
+        logger.info("Resuming change capture of {} from {}", config.getAlias(), persisted);
+        connect();
+    }
+
+    public Optional<BinlogPosition> getPosition()
+    {
+        return Optional.ofNullable(persisted);
+    }
+
+    @Override
+    public void close()
+    {
+        flushScheduler.shutdownNow();
+        try
+        {
+            if (client != null)
+            {
+                client.disconnect();
+            }
+        }
+        catch (IOException exc)
+        {
+            logger.warn("Error disconnecting from binlog of {}", config.getSource().getMysql(), exc);
+        }
+
+        synchronized (this)
+        {
+            if (client != null)
+            {
+                flush();
+            }
+        }
+    }
+
+    @Override
+    public String toString()
+    {
+        return "BinlogChangeCapture {alias=" + config.getAlias() + ", table=" + cdc.getTable() + ", position=" + persisted + "}";
+    }
+}
@@ -0,0 +1,117 @@
+package com.ethlo.my2ch.cdc;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.io.UncheckedIOException;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+import java.util.StringJoiner;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.github.shyiko.mysql.binlog.event.deserialization.json.JsonBinary;
+
+/**
+ * A column of the captured MySQL table, converting the raw binlog value to what the JDBC driver would have returned
+ */
+class BinlogColumn
+{
+    private static final Pattern QUOTED_VALUE = Pattern.compile("'((?:[^']|'')*)'");
+    private static final long MILLIS_PER_DAY = 86_400_000L;
+
+    private final String name;
+    private final String dataType;
+    private final boolean unsigned;
+    private final List<String> values;
+
+    BinlogColumn(final String name, final String dataType, final String columnType)
+    {
+        this.name = name;
+        this.dataType = dataType.toLowerCase();
+        this.unsigned = columnType.toLowerCase().contains("unsigned");
+        this.values = "enum".equals(this.dataType) || "set".equals(this.dataType) ? parseValues(columnType) : Collections.emptyList();
+    }
+
+    String getName()
+    {
+        return name;
+    }
+
+    /**
+     * Converts a value deserialized with DATE_AND_TIME_AS_LONG and CHAR_AND_BINARY_AS_BYTE_ARRAY compatibility modes
+     */
+    Object convert(final Serializable value)
+    {
+        if (value == null)
+        {
+            return null;
+        }
+
+        switch (dataType)
+        {
+            case "tinyint":
+                return unsigned ? ((Number) value).intValue() & 0xFF : value;
+            case "smallint":
+                return unsigned ? ((Number) value).intValue() & 0xFFFF : value;
+            case "mediumint":
+                return unsigned ? ((Number) value).intValue() & 0xFFFFFF : value;
+            case "int":
+                return unsigned ? ((Number) value).longValue() & 0xFFFFFFFFL : value;
+            case "date":
+                return LocalDate.ofEpochDay(Math.floorDiv(((Number) value).longValue(), MILLIS_PER_DAY));
+            case "datetime":
+                final long millis = ((Number) value).longValue();
+                return LocalDateTime.ofEpochSecond(Math.floorDiv(millis, 1000), (int) Math.floorMod(millis, 1000) * 1_000_000, ZoneOffset.UTC);
+            case "timestamp":
+                return Instant.ofEpochMilli(((Number) value).longValue());
+            case "time":
+                return LocalTime.ofNanoOfDay(((Number) value).longValue() * 1_000_000).toString();
+            case "enum":
+                final int index = ((Number) value).intValue();
+                return index > 0 && index <= values.size() ? values.get(index - 1) : "";
+            case "set":
+                final long bits = ((Number) value).longValue();
+                final StringJoiner joiner = new StringJoiner(",");
+                for (int i = 0; i < values.size(); i++)
+                {
+                    if ((bits & (1L << i)) != 0)
+                    {
+                        joiner.add(values.get(i));
+                    }
+                }
+                return joiner.toString();
+            case "bit":
+                final long[] words = ((BitSet) value).toLongArray();
+                return words.length > 0 ? words[0] : 0L;
+            case "json":
+                try
+                {
+                    return JsonBinary.parseAsString((byte[]) value);
+                }
+                catch (IOException exc)
+                {
+                    throw new UncheckedIOException(exc);
+                }
+            default:
+                return value;
+        }
+    }
+
+    private static List<String> parseValues(final String columnType)
+    {
+        final List<String> result = new ArrayList<>();
+        final Matcher matcher = QUOTED_VALUE.matcher(columnType);
+        while (matcher.find())
+        {
+            result.add(matcher.group(1).replace("''", "'"));
+        }
+        return result;
+    }
+}
@@ -0,0 +1,52 @@
+package com.ethlo.my2ch.cdc;
+
+import java.util.Objects;
+
+public class BinlogPosition
+{
+    private final String file;
+    private final long position;
+
+    public BinlogPosition(final String file, final long position)
+    {
+        this.file = file;
+        this.position = position;
+    }
+
+    public String getFile()
+    {
+        return file;
+    }
+
+    public long getPosition()
+    {
+        return position;
+    }
+
+    @Override
+    public boolean equals(final Object o)
+    {
+        if (this == o)
+        {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass())
+        {
+            return false;
+        }
+        final BinlogPosition that = (BinlogPosition) o;
+        return position == that.position && file.equals(that.file);
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return Objects.hash(file, position);
+    }
+
+    @Override
+    public String toString()
+    {
+        return file + ":" + position;
+    }
+}
@@ -0,0 +1,34 @@
+package com.ethlo.my2ch.cdc;
+
+import java.util.Optional;
+
+import com.ethlo.my2ch.state.StateStore;
+
+/**
+ * Keeps the last committed binlog position per alias in a state store
+ */
+public class BinlogPositionStore
+{
+    private static final String KEY = "binlog_position";
+
+    private final StateStore stateStore;
+
+    public BinlogPositionStore(final StateStore stateStore)
+    {
+        this.stateStore = stateStore;
+    }
+
+    public Optional<BinlogPosition> get(final String alias)
+    {
+        return stateStore.get(alias, KEY).map(value ->
+        {
+            final int separator = value.lastIndexOf(':');
+            return new BinlogPosition(value.substring(0, separator), Long.parseLong(value.substring(separator + 1)));
+        });
+    }
+
+    public void put(final String alias, final BinlogPosition position)
+    {
+        stateStore.put(alias, KEY, position.toString());
+    }
+}
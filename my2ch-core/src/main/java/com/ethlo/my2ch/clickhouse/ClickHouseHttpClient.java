@@ -0,0 +1,183 @@
+package com.ethlo.my2ch.clickhouse;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Minimal client for the ClickHouse HTTP interface, used for binary inserts that are not covered by ClackShack.
+ */
+public class ClickHouseHttpClient
+{
+    private static final int GZIP_BUFFER_SIZE = 65_536;
+    private static final int READ_BUFFER_SIZE = 65_536;
+
+    private final HttpClient httpClient;
+    private final String baseUrl;
+    private final String username;
+    private final String password;
+
+    public ClickHouseHttpClient(final String url)
+    {
+        final URI uri = URI.create(url);
+        final String userInfo = uri.getRawUserInfo();
+        if (userInfo != null)
+        {
+            final String[] parts = userInfo.split(":", 2);
+            this.username = URLDecoder.decode(parts[0], StandardCharsets.UTF_8);
+            this.password = parts.length > 1 ? URLDecoder.decode(parts[1], StandardCharsets.UTF_8) : "";
+        }
+        else
+        {
+            this.username = null;
+            this.password = null;
+        }
+        this.baseUrl = uri.getScheme() + "://" + uri.getHost() + (uri.getPort() > 0 ? ":" + uri.getPort() : "") + "/";
+        this.httpClient = HttpClient.newBuilder()
+                .connectTimeout(Duration.ofSeconds(10))
+                .build();
+    }
+
+    /**
+     * Send the contents of the buffer as the data of an INSERT ... FORMAT statement
+     *
+     * @param query      The insert statement, including the FORMAT clause
+     * @param data       The encoded rows
+     * @param compress   Whether to gzip the request body
+     * @param compressed A reusable buffer to hold the compressed data
+     */
+    public void insert(final String query, final RowBinaryBuffer data, final boolean compress, final RowBinaryBuffer compressed)
+    {
+        insert(query, Collections.emptyMap(), data, compress, compressed);
+    }
+
+    /**
+     * Send the contents of the buffer as the data of an INSERT ... FORMAT statement
+     *
+     * @param query      The insert statement, including the FORMAT clause
+     * @param settings   The ClickHouse settings for the statement
+     * @param data       The encoded rows
+     * @param compress   Whether to gzip the request body
+     * @param compressed A reusable buffer to hold the compressed data
+     */
+    public void insert(final String query, final Map<String, String> settings, final RowBinaryBuffer data, final boolean compress, final RowBinaryBuffer compressed)
+    {
+        final HttpRequest.Builder request = newRequest(query, settings);
+        if (compress)
+        {
+            compressed.reset();
+            try (final GZIPOutputStream gzip = new GZIPOutputStream(compressed, GZIP_BUFFER_SIZE))
+            {
+                data.writeTo(gzip);
+            }
+            catch (IOException exc)
+            {
+                throw new UncheckedIOException(exc);
+            }
+            request.header("Content-Encoding", "gzip");
+            request.POST(HttpRequest.BodyPublishers.ofByteArray(compressed.array(), 0, compressed.size()));
+        }
+        else
+        {
+            request.POST(HttpRequest.BodyPublishers.ofByteArray(data.array(), 0, data.size()));
+        }
+
+        send(request.build(), query);
+    }
+
+    /**
+     * Run a query and hand the raw response body to the reader, without buffering it, for results too large to hold in memory
+     *
+     * @param query  The query, including the FORMAT clause
+     * @param reader Reads the response body
+     */
+    public void query(final String query, final ResponseReader reader)
+    {
+        final HttpRequest request = newRequest(query, Collections.emptyMap()).POST(HttpRequest.BodyPublishers.noBody()).build();
+        try
+        {
+            final HttpResponse<InputStream> response = httpClient.send(request, HttpResponse.BodyHandlers.ofInputStream());
+            try (final InputStream body = response.body())
+            {
+                if (response.statusCode() != 200)
+                {
+                    throw new IllegalStateException("ClickHouse responded with status " + response.statusCode() + " to '" + query + "': "
+                            + new String(body.readAllBytes(), StandardCharsets.UTF_8));
+                }
+                reader.read(new BufferedInputStream(body, READ_BUFFER_SIZE));
+            }
+        }
+        catch (IOException exc)
+        {
+            throw new UncheckedIOException(exc);
+        }
+        catch (InterruptedException exc)
+        {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while running '" + query + "'", exc);
+        }
+    }
+
+    /**
+     * Run a statement without result, like DDL, with settings that ClackShack cannot pass
+     *
+     * @param statement The statement
+     * @param settings  The ClickHouse settings for the statement
+     */
+    public void execute(final String statement, final Map<String, String> settings)
+    {
+        send(newRequest(statement, settings).POST(HttpRequest.BodyPublishers.noBody()).build(), statement);
+    }
+
+    @FunctionalInterface
+    public interface ResponseReader
+    {
+        void read(InputStream body) throws IOException;
+    }
+
+    private HttpRequest.Builder newRequest(final String query, final Map<String, String> settings)
+    {
+        final StringBuilder url = new StringBuilder(baseUrl).append("?query=").append(URLEncoder.encode(query, StandardCharsets.UTF_8));
+        settings.forEach((name, value) -> url.append('&').append(URLEncoder.encode(name, StandardCharsets.UTF_8)).append('=').append(URLEncoder.encode(value, StandardCharsets.UTF_8)));
+        final HttpRequest.Builder builder = HttpRequest.newBuilder(URI.create(url.toString()));
+        if (username != null)
+        {
+            builder.header("X-ClickHouse-User", username);
+            builder.header("X-ClickHouse-Key", password);
+        }
+        return builder;
+    }
+
+    private void send(final HttpRequest request, final String query)
+    {
+        try
+        {
+            final HttpResponse<String> response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
+            if (response.statusCode() != 200)
+            {
+                throw new IllegalStateException("ClickHouse responded with status " + response.statusCode() + " to '" + query + "': " + response.body());
+            }
+        }
+        catch (IOException exc)
+        {
+            throw new UncheckedIOException(exc);
+        }
+        catch (InterruptedException exc)
+        {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while sending '" + query + "'", exc);
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package com.ethlo.my2ch.clickhouse;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * A growable, reusable, unsynchronized byte buffer with the little-endian primitives needed for ClickHouse RowBinary.
+ */
+public class RowBinaryBuffer extends OutputStream
+{
+    private byte[] buf;
+    private int size;
+
+    public RowBinaryBuffer(final int initialCapacity)
+    {
+        this.buf = new byte[initialCapacity];
+    }
+
+    @Override
+    public void write(final int b)
+    {
+        ensureCapacity(1);
+        buf[size++] = (byte) b;
+    }
+
+    @Override
+    public void write(final byte[] b, final int off, final int len)
+    {
+        ensureCapacity(len);
+        System.arraycopy(b, off, buf, size, len);
+        size += len;
+    }
+
+    public void writeInt8(final int v)
+    {
+        write(v);
+    }
+
+    public void writeInt16(final int v)
+    {
+        ensureCapacity(2);
+        buf[size++] = (byte) v;
+        buf[size++] = (byte) (v >>> 8);
+    }
+
+    public void writeInt32(final int v)
+    {
+        ensureCapacity(4);
+        buf[size++] = (byte) v;
+        buf[size++] = (byte) (v >>> 8);
+        buf[size++] = (byte) (v >>> 16);
+        buf[size++] = (byte) (v >>> 24);
+    }
+
+    public void writeInt64(final long v)
+    {
+        ensureCapacity(8);
+        for (int i = 0; i < 8; i++)
+        {
+            buf[size++] = (byte) (v >>> (i * 8));
+        }
+    }
+
+    public void writeVarUInt(final long value)
+    {
+        long v = value;
+        while ((v & ~0x7FL) != 0)
+        {
+            write((int) ((v & 0x7F) | 0x80));
+            v >>>= 7;
+        }
+        write((int) v);
+    }
+
+    public void writeString(final byte[] bytes)
+    {
+        writeVarUInt(bytes.length);
+        write(bytes, 0, bytes.length);
+    }
+
+    public void writeString(final String value)
+    {
+        writeString(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public int size()
+    {
+        return size;
+    }
+
+    public byte[] array()
+    {
+        return buf;
+    }
+
+    public void reset()
+    {
+        size = 0;
+    }
+
+    public void writeTo(final OutputStream out) throws IOException
+    {
+        out.write(buf, 0, size);
+    }
+
+    private void ensureCapacity(final int extra)
+    {
+        final int required = size + extra;
+        if (required > buf.length)
+        {
+            buf = Arrays.copyOf(buf, Math.max(required, buf.length * 2));
+        }
+    }
+}
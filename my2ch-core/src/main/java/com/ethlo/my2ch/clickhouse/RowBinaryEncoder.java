@@ -0,0 +1,389 @@
+package com.ethlo.my2ch.clickhouse;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.RoundingMode;
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Encodes rows of JDBC-style values into the ClickHouse RowBinary format, given the ClickHouse type of each column.
+ * Date-times without a zone, like MySQL DATETIME, are taken as wall-clock time in the zone of the column, if its type has one,
+ * or else the given zone, which should be the zone of the ClickHouse server, as when ClickHouse reads them from MySQL itself.
+ */
+public class RowBinaryEncoder
+{
+    private static final Pattern ENUM_ENTRY = Pattern.compile("'((?:[^'\\\\]|\\\\.)*)'\\s*=\\s*(-?\\d+)");
+    private static final Pattern NUMBER = Pattern.compile("(\\d+)");
+    private static final Pattern TIME_ZONE = Pattern.compile("'([^']+)'");
+
+    private final ValueWriter[] writers;
+
+    /**
+     * @param zoneId The zone of date-time columns without an explicit zone
+     */
+    public RowBinaryEncoder(final List<String> clickHouseTypes, final ZoneId zoneId)
+    {
+        this.writers = new ValueWriter[clickHouseTypes.size()];
+        for (int i = 0; i < writers.length; i++)
+        {
+            final String type = clickHouseTypes.get(i).trim();
+            writers[i] = type.startsWith("Nullable(") || type.startsWith("LowCardinality(Nullable(") ? writerFor(type, zoneId) : notNull(type, writerFor(type, zoneId));
+        }
+    }
+
+    public int getColumnCount()
+    {
+        return writers.length;
+    }
+
+    public void encode(final Object[] values, final RowBinaryBuffer out)
+    {
+        for (int i = 0; i < writers.length; i++)
+        {
+            writers[i].write(values[i], out);
+        }
+    }
+
+    /**
+     * Fails on a null for a non-Nullable column with the type in the message, rather than somewhere in the conversion
+     */
+    private static ValueWriter notNull(final String type, final ValueWriter writer)
+    {
+        return (value, out) ->
+        {
+            if (value == null)
+            {
+                throw new IllegalArgumentException("Null value for non-Nullable column of type " + type);
+            }
+            writer.write(value, out);
+        };
+    }
+
+    private static ValueWriter writerFor(final String type, final ZoneId zoneId)
+    {
+        if (type.startsWith("Nullable("))
+        {
+            final ValueWriter inner = writerFor(unwrap(type), zoneId);
+            return (value, out) ->
+            {
+                if (value == null)
+                {
+                    out.writeInt8(1);
+                }
+                else
+                {
+                    out.writeInt8(0);
+                    inner.write(value, out);
+                }
+            };
+        }
+        else if (type.startsWith("LowCardinality("))
+        {
+            return writerFor(unwrap(type), zoneId);
+        }
+
+        final int paren = type.indexOf('(');
+        final String name = paren != -1 ? type.substring(0, paren) : type;
+        switch (name)
+        {
+            case "Int8":
+            case "UInt8":
+            case "Bool":
+                return (value, out) -> out.writeInt8((int) toLong(value));
+            case "Int16":
+            case "UInt16":
+                return (value, out) -> out.writeInt16((int) toLong(value));
+            case "Int32":
+            case "UInt32":
+                return (value, out) -> out.writeInt32((int) toLong(value));
+            case "Int64":
+            case "UInt64":
+                return (value, out) -> out.writeInt64(toLong(value));
+            case "Float32":
+                return (value, out) -> out.writeInt32(Float.floatToIntBits((float) toDouble(value)));
+            case "Float64":
+                return (value, out) -> out.writeInt64(Double.doubleToLongBits(toDouble(value)));
+            case "String":
+                return (value, out) -> out.writeString(toBytes(value));
+            case "FixedString":
+                final int length = parameters(type)[0];
+                return (value, out) ->
+                {
+                    final byte[] bytes = toBytes(value);
+                    out.write(bytes, 0, Math.min(bytes.length, length));
+                    for (int i = bytes.length; i < length; i++)
+                    {
+                        out.write(0);
+                    }
+                };
+            case "Date":
+                return (value, out) -> out.writeInt16((int) toLocalDate(value, zoneId).toEpochDay());
+            case "Date32":
+                return (value, out) -> out.writeInt32((int) toLocalDate(value, zoneId).toEpochDay());
+            case "DateTime":
+                final ZoneId dateTimeZone = zoneOf(type, zoneId);
+                return (value, out) -> out.writeInt32((int) toInstant(value, dateTimeZone).getEpochSecond());
+            case "DateTime64":
+                final int precision = parameters(type)[0];
+                final long multiplier = BigInteger.TEN.pow(precision).longValueExact();
+                final long divisor = BigInteger.TEN.pow(9 - precision).longValueExact();
+                final ZoneId dateTime64Zone = zoneOf(type, zoneId);
+                return (value, out) ->
+                {
+                    final Instant instant = toInstant(value, dateTime64Zone);
+                    out.writeInt64(instant.getEpochSecond() * multiplier + instant.getNano() / divisor);
+                };
+            case "Decimal":
+                final int[] ps = parameters(type);
+                return decimalWriter(decimalBytes(ps[0]), ps[1]);
+            case "Decimal32":
+                return decimalWriter(4, parameters(type)[0]);
+            case "Decimal64":
+                return decimalWriter(8, parameters(type)[0]);
+            case "Decimal128":
+                return decimalWriter(16, parameters(type)[0]);
+            case "Decimal256":
+                return decimalWriter(32, parameters(type)[0]);
+            case "Enum8":
+                final Map<String, Integer> enum8 = enumValues(type);
+                return (value, out) -> out.writeInt8(enumValue(enum8, value, type));
+            case "Enum16":
+                final Map<String, Integer> enum16 = enumValues(type);
+                return (value, out) -> out.writeInt16(enumValue(enum16, value, type));
+            default:
+                throw new IllegalArgumentException("Unsupported ClickHouse type for RowBinary encoding: " + type);
+        }
+    }
+
+    /**
+     * @return The zone of a type like <code>DateTime('Europe/Oslo')</code> or <code>DateTime64(3, 'UTC')</code>, or the default
+     */
+    private static ZoneId zoneOf(final String type, final ZoneId defaultZone)
+    {
+        final Matcher matcher = TIME_ZONE.matcher(type);
+        return matcher.find() ? ZoneId.of(matcher.group(1)) : defaultZone;
+    }
+
+    private static ValueWriter decimalWriter(final int bytes, final int scale)
+    {
+        return (value, out) ->
+        {
+            final BigInteger unscaled = toBigDecimal(value).setScale(scale, RoundingMode.HALF_UP).unscaledValue();
+            if (bytes == 4)
+            {
+                out.writeInt32(unscaled.intValueExact());
+            }
+            else if (bytes == 8)
+            {
+                out.writeInt64(unscaled.longValueExact());
+            }
+            else
+            {
+                // Little-endian two's complement, sign-extended to the full width
+                final byte[] bigEndian = unscaled.toByteArray();
+                final byte pad = (byte) (unscaled.signum() < 0 ? 0xFF : 0x00);
+                for (int i = 0; i < bytes; i++)
+                {
+                    final int idx = bigEndian.length - 1 - i;
+                    out.write(idx >= 0 ? bigEndian[idx] : pad);
+                }
+            }
+        };
+    }
+
+    private static int decimalBytes(final int precision)
+    {
+        if (precision <= 9)
+        {
+            return 4;
+        }
+        else if (precision <= 18)
+        {
+            return 8;
+        }
+        else if (precision <= 38)
+        {
+            return 16;
+        }
+        return 32;
+    }
+
+    private static String unwrap(final String type)
+    {
+        return type.substring(type.indexOf('(') + 1, type.lastIndexOf(')')).trim();
+    }
+
+    private static int[] parameters(final String type)
+    {
+        final Matcher matcher = NUMBER.matcher(type.substring(type.indexOf('(')));
+        final int[] result = new int[2];
+        for (int i = 0; i < result.length && matcher.find(); i++)
+        {
+            result[i] = Integer.parseInt(matcher.group(1));
+        }
+        return result;
+    }
+
+    private static Map<String, Integer> enumValues(final String type)
+    {
+        final Map<String, Integer> values = new HashMap<>();
+        final Matcher matcher = ENUM_ENTRY.matcher(type);
+        while (matcher.find())
+        {
+            values.put(matcher.group(1).replace("\\'", "'"), Integer.parseInt(matcher.group(2)));
+        }
+        return values;
+    }
+
+    private static int enumValue(final Map<String, Integer> values, final Object value, final String type)
+    {
+        if (value instanceof Number)
+        {
+            return ((Number) value).intValue();
+        }
+        final Integer result = values.get(value.toString());
+        if (result == null)
+        {
+            throw new IllegalArgumentException("Value '" + value + "' is not defined in " + type);
+        }
+        return result;
+    }
+
+    private static long toLong(final Object value)
+    {
+        if (value instanceof Number)
+        {
+            return ((Number) value).longValue();
+        }
+        else if (value instanceof Boolean)
+        {
+            return (Boolean) value ? 1 : 0;
+        }
+        else if (value instanceof byte[])
+        {
+            // MySQL BIT(n) columns
+            long result = 0;
+            for (final byte b : (byte[]) value)
+            {
+                result = (result << 8) | (b & 0xFF);
+            }
+            return result;
+        }
+        return new BigDecimal(value.toString().trim()).longValue();
+    }
+
+    private static double toDouble(final Object value)
+    {
+        if (value instanceof Number)
+        {
+            return ((Number) value).doubleValue();
+        }
+        return Double.parseDouble(value.toString().trim());
+    }
+
+    private static BigDecimal toBigDecimal(final Object value)
+    {
+        if (value instanceof BigDecimal)
+        {
+            return (BigDecimal) value;
+        }
+        else if (value instanceof BigInteger)
+        {
+            return new BigDecimal((BigInteger) value);
+        }
+        else if (value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte)
+        {
+            return BigDecimal.valueOf(((Number) value).longValue());
+        }
+        return new BigDecimal(value.toString().trim());
+    }
+
+    private static byte[] toBytes(final Object value)
+    {
+        if (value instanceof byte[])
+        {
+            return (byte[]) value;
+        }
+        return value.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static LocalDate toLocalDate(final Object value, final ZoneId zoneId)
+    {
+        if (value instanceof LocalDate)
+        {
+            return (LocalDate) value;
+        }
+        else if (value instanceof java.sql.Date)
+        {
+            return ((java.sql.Date) value).toLocalDate();
+        }
+        else if (value instanceof LocalDateTime)
+        {
+            return ((LocalDateTime) value).toLocalDate();
+        }
+        else if (value instanceof String)
+        {
+            return LocalDate.parse(((String) value).substring(0, 10));
+        }
+        return toInstant(value, zoneId).atZone(zoneId).toLocalDate();
+    }
+
+    private static Instant toInstant(final Object value, final ZoneId zoneId)
+    {
+        if (value instanceof Instant)
+        {
+            return (Instant) value;
+        }
+        else if (value instanceof LocalDateTime)
+        {
+            return ((LocalDateTime) value).atZone(zoneId).toInstant();
+        }
+        else if (value instanceof Timestamp)
+        {
+            return ((Timestamp) value).toLocalDateTime().atZone(zoneId).toInstant();
+        }
+        else if (value instanceof java.sql.Date)
+        {
+            return ((java.sql.Date) value).toLocalDate().atStartOfDay(zoneId).toInstant();
+        }
+        else if (value instanceof java.util.Date)
+        {
+            return ((java.util.Date) value).toInstant();
+        }
+        else if (value instanceof OffsetDateTime)
+        {
+            return ((OffsetDateTime) value).toInstant();
+        }
+        else if (value instanceof ZonedDateTime)
+        {
+            return ((ZonedDateTime) value).toInstant();
+        }
+        else if (value instanceof LocalDate)
+        {
+            return ((LocalDate) value).atStartOfDay(zoneId).toInstant();
+        }
+        else if (value instanceof Number)
+        {
+            return Instant.ofEpochSecond(((Number) value).longValue());
+        }
+        return LocalDateTime.parse(value.toString().trim().replace(' ', 'T')).atZone(zoneId).toInstant();
+    }
+
+    @FunctionalInterface
+    private interface ValueWriter
+    {
+        void write(Object value, RowBinaryBuffer out);
+    }
+}
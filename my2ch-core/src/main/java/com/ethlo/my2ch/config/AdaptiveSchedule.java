@@ -0,0 +1,70 @@
+package com.ethlo.my2ch.config;
+
+import java.time.Duration;
+
+import javax.validation.Valid;
+import javax.validation.constraints.Min;
+import javax.validation.constraints.NotNull;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * Adjusts the interval between runs to the rows found by recent runs, polling idle tables less often and busy tables more often
+ */
+@Valid
+public class AdaptiveSchedule
+{
+    @NotNull
+    private final Duration minInterval;
+
+    @NotNull
+    private final Duration maxInterval;
+
+    private final Duration freshness;
+
+    @Min(1)
+    private final long backlogRows;
+
+    public AdaptiveSchedule(@JsonProperty("min-interval") final Duration minInterval,
+                            @JsonProperty("max-interval") final Duration maxInterval,
+                            @JsonProperty("freshness") final Duration freshness,
+                            @JsonProperty("backlog-rows") final Long backlogRows)
+    {
+        this.minInterval = minInterval;
+        this.maxInterval = maxInterval;
+        this.freshness = freshness;
+        this.backlogRows = backlogRows != null ? backlogRows : 10_000;
+    }
+
+    /**
+     * @return The interval that runs finding a backlog shrink towards
+     */
+    public Duration getMinInterval()
+    {
+        return minInterval;
+    }
+
+    /**
+     * @return The interval that runs finding no rows stretch towards
+     */
+    public Duration getMaxInterval()
+    {
+        return maxInterval;
+    }
+
+    /**
+     * @return The longest a committed row may take to reach ClickHouse, including the duration of the run, or null for no limit
+     */
+    public Duration getFreshness()
+    {
+        return freshness;
+    }
+
+    /**
+     * @return The number of rows in one run that counts as a backlog
+     */
+    public long getBacklogRows()
+    {
+        return backlogRows;
+    }
+}
@@ -0,0 +1,44 @@
+package com.ethlo.my2ch.config;
+
+import java.util.Collections;
+import java.util.List;
+
+import javax.validation.Valid;
+import javax.validation.constraints.Min;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * Splits the rows of an incremental run into batches of bounded size, transferred one after the other in key order
+ */
+@Valid
+public class Batching
+{
+    @Min(1)
+    private final long maxRows;
+
+    private final List<String> key;
+
+    public Batching(@JsonProperty("max-rows") final Long maxRows,
+                    @JsonProperty("key") final List<String> key)
+    {
+        this.maxRows = maxRows != null ? maxRows : 1_000_000;
+        this.key = key != null ? key : Collections.emptyList();
+    }
+
+    /**
+     * @return The most rows transferred in one batch
+     */
+    public long getMaxRows()
+    {
+        return maxRows;
+    }
+
+    /**
+     * @return The columns ordering the rows, starting with the watermark column and unique together. Defaults to the watermark column
+     */
+    public List<String> getKey()
+    {
+        return key;
+    }
+}
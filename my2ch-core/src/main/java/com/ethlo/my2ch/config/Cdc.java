@@ -0,0 +1,73 @@
+package com.ethlo.my2ch.config;
+
+import java.time.Duration;
+
+import javax.validation.Valid;
+import javax.validation.constraints.Min;
+import javax.validation.constraints.NotNull;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * Change-data-capture from the MySQL row-based binlog
+ */
+@Valid
+public class Cdc
+{
+    public static final String SIGN_COLUMN = "_sign";
+    public static final String VERSION_COLUMN = "_version";
+
+    @NotNull
+    private final String table;
+
+    private final Long serverId;
+
+    @Min(1)
+    private final int flushRows;
+
+    @NotNull
+    private final Duration flushInterval;
+
+    public Cdc(@JsonProperty("table") final String table,
+               @JsonProperty("server-id") final Long serverId,
+               @JsonProperty("flush-rows") final Integer flushRows,
+               @JsonProperty("flush-interval") final Duration flushInterval)
+    {
+        this.table = table;
+        this.serverId = serverId;
+        this.flushRows = flushRows != null ? flushRows : 10_000;
+        this.flushInterval = flushInterval != null ? flushInterval : Duration.ofSeconds(1);
+    }
+
+    /**
+     * @return The MySQL table to capture changes from. The source query must select its columns by name
+     */
+    public String getTable()
+    {
+        return table;
+    }
+
+    /**
+     * @return The server id to register as towards MySQL. Must be unique among the replicas of the server
+     */
+    public Long getServerId()
+    {
+        return serverId;
+    }
+
+    /**
+     * @return The number of buffered rows that triggers an insert
+     */
+    public int getFlushRows()
+    {
+        return flushRows;
+    }
+
+    /**
+     * @return The maximum time a change is buffered before it is inserted
+     */
+    public Duration getFlushInterval()
+    {
+        return flushInterval;
+    }
+}
@@ -0,0 +1,37 @@
+package com.ethlo.my2ch.config;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * A cheap query on the source whose result only changes when there may be something to transfer. A run is skipped when it
+ * returns the same value as before the last successful run.
+ */
+public class ChangeProbe
+{
+    private final String query;
+
+    private final String table;
+
+    public ChangeProbe(@JsonProperty("query") final String query,
+                       @JsonProperty("table") final String table)
+    {
+        this.query = query;
+        this.table = table;
+    }
+
+    /**
+     * @return A query returning a single value, like the max of an indexed key, or null
+     */
+    public String getQuery()
+    {
+        return query;
+    }
+
+    /**
+     * @return A table in the source database whose <code>UPDATE_TIME</code> in <code>information_schema.tables</code> is probed, or null
+     */
+    public String getTable()
+    {
+        return table;
+    }
+}
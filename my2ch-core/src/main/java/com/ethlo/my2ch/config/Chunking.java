@@ -0,0 +1,66 @@
+package com.ethlo.my2ch.config;
+
+import javax.validation.Valid;
+import javax.validation.constraints.Min;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * Splits the source into a number of key-ranges (or hash-buckets) that are transferred concurrently.
+ */
+@Valid
+public class Chunking
+{
+    @Min(1)
+    private final int chunks;
+
+    @Min(1)
+    private final int parallelism;
+
+    private final String key;
+
+    private final boolean hashed;
+
+    public Chunking(@JsonProperty("chunks") final Integer chunks,
+                    @JsonProperty("parallelism") final Integer parallelism,
+                    @JsonProperty("key") final String key,
+                    @JsonProperty("hashed") final Boolean hashed)
+    {
+        this.chunks = chunks != null ? chunks : 1;
+        this.parallelism = parallelism != null ? parallelism : this.chunks;
+        this.key = key;
+        this.hashed = hashed != null && hashed;
+    }
+
+    /**
+     * @return The number of sub-ranges to split the source into
+     */
+    public int getChunks()
+    {
+        return chunks;
+    }
+
+    /**
+     * @return The maximum number of sub-ranges transferred at the same time
+     */
+    public int getParallelism()
+    {
+        return parallelism;
+    }
+
+    /**
+     * @return The column to split on. Defaults to the primary key of the target if not set
+     */
+    public String getKey()
+    {
+        return key;
+    }
+
+    /**
+     * @return Whether to split on a hash of the key (for non-numeric keys) instead of numeric ranges
+     */
+    public boolean isHashed()
+    {
+        return hashed;
+    }
+}
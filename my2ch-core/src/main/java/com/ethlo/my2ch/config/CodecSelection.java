@@ -0,0 +1,40 @@
+package com.ethlo.my2ch.config;
+
+import javax.validation.Valid;
+import javax.validation.constraints.Min;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+@Valid
+public class CodecSelection
+{
+    public static final int DEFAULT_SAMPLE_ROWS = 100_000;
+
+    @Min(1)
+    private final int sampleRows;
+
+    private final double sizeTolerance;
+
+    public CodecSelection(@JsonProperty("sample-rows") final Integer sampleRows,
+                          @JsonProperty("size-tolerance") final Double sizeTolerance)
+    {
+        this.sampleRows = sampleRows != null ? sampleRows : DEFAULT_SAMPLE_ROWS;
+        this.sizeTolerance = sizeTolerance != null ? sizeTolerance : 0.05;
+    }
+
+    /**
+     * @return The number of rows of the source query to compress with each candidate codec
+     */
+    public int getSampleRows()
+    {
+        return sampleRows;
+    }
+
+    /**
+     * @return How much larger than the smallest result a codec may compress to, and still be chosen for reading faster
+     */
+    public double getSizeTolerance()
+    {
+        return sizeTolerance;
+    }
+}
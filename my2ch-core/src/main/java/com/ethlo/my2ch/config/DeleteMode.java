@@ -0,0 +1,14 @@
+package com.ethlo.my2ch.config;
+
+public enum DeleteMode
+{
+    /**
+     * <code>DELETE FROM</code>, which hides the rows at once and removes them when parts merge
+     */
+    LIGHTWEIGHT,
+
+    /**
+     * <code>ALTER TABLE ... DELETE</code>, which rewrites the affected parts
+     */
+    MUTATION
+}
@@ -0,0 +1,70 @@
+package com.ethlo.my2ch.config;
+
+import java.time.Duration;
+
+import javax.validation.Valid;
+import javax.validation.constraints.Min;
+import javax.validation.constraints.NotNull;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * Removes rows from ClickHouse whose key is no longer in the source
+ */
+@Valid
+public class DeleteSync
+{
+    @NotNull
+    private final Duration interval;
+
+    private final String key;
+
+    @Min(1)
+    private final int batchSize;
+
+    @NotNull
+    private final DeleteMode mode;
+
+    public DeleteSync(@JsonProperty("interval") final Duration interval,
+                      @JsonProperty("key") final String key,
+                      @JsonProperty("batch-size") final Integer batchSize,
+                      @JsonProperty("mode") final DeleteMode mode)
+    {
+        this.interval = interval;
+        this.key = key;
+        this.batchSize = batchSize != null ? batchSize : 10_000;
+        this.mode = mode != null ? mode : DeleteMode.LIGHTWEIGHT;
+    }
+
+    /**
+     * @return The delay between comparisons when running as a service
+     */
+    public Duration getInterval()
+    {
+        return interval;
+    }
+
+    /**
+     * @return The integer column identifying a row. Defaults to the primary key of the target if not set
+     */
+    public String getKey()
+    {
+        return key;
+    }
+
+    /**
+     * @return The maximum number of keys per delete statement
+     */
+    public int getBatchSize()
+    {
+        return batchSize;
+    }
+
+    /**
+     * @return How to delete rows from tables without change capture. Tables with change capture get tombstone rows instead
+     */
+    public DeleteMode getMode()
+    {
+        return mode;
+    }
+}
@@ -0,0 +1,57 @@
+package com.ethlo.my2ch.config;
+
+import java.util.Collections;
+import java.util.List;
+
+import javax.validation.Valid;
+import javax.validation.constraints.NotNull;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * Reloads only the partitions of a full-reload table that changed since the last transfer, compared by row count and checksum
+ */
+@Valid
+public class Partitioning
+{
+    @NotNull
+    private final String expression;
+
+    @NotNull
+    private final String sourceExpression;
+
+    private final List<String> checksumColumns;
+
+    public Partitioning(@JsonProperty("expression") final String expression,
+                        @JsonProperty("source-expression") final String sourceExpression,
+                        @JsonProperty("checksum-columns") final List<String> checksumColumns)
+    {
+        this.expression = expression;
+        this.sourceExpression = sourceExpression;
+        this.checksumColumns = checksumColumns != null ? checksumColumns : Collections.emptyList();
+    }
+
+    /**
+     * @return The partition key of the ClickHouse table, as in its <code>PARTITION BY</code> clause
+     */
+    public String getExpression()
+    {
+        return expression;
+    }
+
+    /**
+     * @return The MySQL expression giving the same value as the partition key for a row of the source query
+     */
+    public String getSourceExpression()
+    {
+        return sourceExpression;
+    }
+
+    /**
+     * @return The columns to checksum per partition, in addition to counting rows. Defaults to the primary key of the target if empty
+     */
+    public List<String> getChecksumColumns()
+    {
+        return checksumColumns;
+    }
+}
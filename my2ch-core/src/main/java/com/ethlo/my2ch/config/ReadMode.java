@@ -0,0 +1,19 @@
+package com.ethlo.my2ch.config;
+
+public enum ReadMode
+{
+    /**
+     * ClickHouse reads a view created in MySQL for each run, through a database with the MySQL engine
+     */
+    VIEW,
+
+    /**
+     * ClickHouse reads the source table through the <code>mysql()</code> table function, with the predicates pushed down to MySQL
+     */
+    TABLE_FUNCTION,
+
+    /**
+     * ClickHouse reads the source table through a database with the MySQL engine, created once, with the predicates pushed down to MySQL
+     */
+    ENGINE_TABLE
+}
@@ -0,0 +1,108 @@
+package com.ethlo.my2ch.config;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.List;
+
+import javax.validation.Valid;
+import javax.validation.constraints.Min;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * Compares the source and the ClickHouse table range by range of a numeric key, and transfers the ranges that differ again
+ */
+@Valid
+public class Reconcile
+{
+    private final String key;
+
+    private final List<String> checksumColumns;
+
+    @Min(2)
+    private final int fanout;
+
+    @Min(1)
+    private final long leafRows;
+
+    @Min(1)
+    private final int maxComparisons;
+
+    @Min(1)
+    private final long maxRangeRows;
+
+    private final Duration interval;
+
+    public Reconcile(@JsonProperty("key") final String key,
+                     @JsonProperty("checksum-columns") final List<String> checksumColumns,
+                     @JsonProperty("fanout") final Integer fanout,
+                     @JsonProperty("leaf-rows") final Long leafRows,
+                     @JsonProperty("max-comparisons") final Integer maxComparisons,
+                     @JsonProperty("max-range-rows") final Long maxRangeRows,
+                     @JsonProperty("interval") final Duration interval)
+    {
+        this.key = key;
+        this.checksumColumns = checksumColumns != null ? checksumColumns : Collections.emptyList();
+        this.fanout = fanout != null ? fanout : 16;
+        this.leafRows = leafRows != null ? leafRows : 10_000;
+        this.maxComparisons = maxComparisons != null ? maxComparisons : 100;
+        this.maxRangeRows = maxRangeRows != null ? maxRangeRows : 1_000_000;
+        this.interval = interval;
+    }
+
+    /**
+     * @return The numeric column to split on. Defaults to the primary key of the target if not set
+     */
+    public String getKey()
+    {
+        return key;
+    }
+
+    /**
+     * @return The columns to checksum per range, in addition to counting rows. Defaults to the key if empty
+     */
+    public List<String> getChecksumColumns()
+    {
+        return checksumColumns;
+    }
+
+    /**
+     * @return The number of sub-ranges to split a differing range into
+     */
+    public int getFanout()
+    {
+        return fanout;
+    }
+
+    /**
+     * @return The number of rows below which a differing range is transferred again instead of split further
+     */
+    public long getLeafRows()
+    {
+        return leafRows;
+    }
+
+    /**
+     * @return The maximum number of range comparisons per pass. The next pass continues where the previous one stopped
+     */
+    public int getMaxComparisons()
+    {
+        return maxComparisons;
+    }
+
+    /**
+     * @return The maximum number of rows of the key range compared per pass, on either side. The next pass continues after it
+     */
+    public long getMaxRangeRows()
+    {
+        return maxRangeRows;
+    }
+
+    /**
+     * @return The delay between passes when running as a service, or null to only reconcile on demand
+     */
+    public Duration getInterval()
+    {
+        return interval;
+    }
+}
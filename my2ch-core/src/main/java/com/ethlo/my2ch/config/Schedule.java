@@ -10,16 +10,81 @@ import com.fasterxml.jackson.annotation.JsonProperty;
 @Valid
 public class Schedule
 {
-    @NotNull
     private final Duration interval;
 
-    public Schedule(@JsonProperty("interval") final Duration interval)
+    private final String cron;
+
+    @NotNull
+    private final Duration jitter;
+
+    private final int priority;
+
+    @NotNull
+    private final Duration maxBackoff;
+
+    @Valid
+    private final AdaptiveSchedule adaptive;
+
+    public Schedule(@JsonProperty("interval") final Duration interval,
+                    @JsonProperty("cron") final String cron,
+                    @JsonProperty("jitter") final Duration jitter,
+                    @JsonProperty("priority") final Integer priority,
+                    @JsonProperty("max-backoff") final Duration maxBackoff,
+                    @JsonProperty("adaptive") final AdaptiveSchedule adaptive)
     {
         this.interval = interval;
+        this.cron = cron;
+        this.jitter = jitter != null ? jitter : Duration.ZERO;
+        this.priority = priority != null ? priority : 0;
+        this.maxBackoff = maxBackoff != null ? maxBackoff : Duration.ofHours(1);
+        this.adaptive = adaptive;
     }
 
+    /**
+     * @return The delay from the end of one run to the start of the next, or the initial delay if adaptive, or null if scheduled by cron
+     */
     public Duration getInterval()
     {
         return interval;
     }
+
+    /**
+     * @return A Spring cron expression with seconds, like <code>0 0 * * * *</code>, or null if scheduled by interval
+     */
+    public String getCron()
+    {
+        return cron;
+    }
+
+    /**
+     * @return The upper bound of the random delay added to each start, to spread out aliases scheduled alike
+     */
+    public Duration getJitter()
+    {
+        return jitter;
+    }
+
+    /**
+     * @return Aliases with a higher priority get the free slots first when several are due
+     */
+    public int getPriority()
+    {
+        return priority;
+    }
+
+    /**
+     * @return The longest delay before retrying an alias that keeps failing
+     */
+    public Duration getMaxBackoff()
+    {
+        return maxBackoff;
+    }
+
+    /**
+     * @return The settings for adjusting the interval to the rows found, or null for a fixed interval
+     */
+    public AdaptiveSchedule getAdaptive()
+    {
+        return adaptive;
+    }
 }
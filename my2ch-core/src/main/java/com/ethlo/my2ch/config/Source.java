@@ -1,5 +1,7 @@
 package com.ethlo.my2ch.config;
 
+import java.time.Duration;
+
 import javax.validation.Valid;
 import javax.validation.constraints.NotNull;
 
@@ -15,16 +17,77 @@ public class Source
     @NotNull
     private final String query;
 
+    private final String table;
+
+    @NotNull
+    private final ReadMode readMode;
+
     private final String rangeClause;
 
+    private final String updateColumn;
+
+    @NotNull
+    private final Duration lookback;
+
+    @Valid
+    private final Chunking chunking;
+
+    @Valid
+    private final Batching batching;
+
+    private final TransferEngine engine;
+
+    @Valid
+    private final Streaming streaming;
+
+    @Valid
+    private final Cdc cdc;
+
+    @Valid
+    private final Throttle throttle;
+
+    @Valid
+    private final Partitioning partitioning;
+
+    private final boolean resumable;
+
+    @Valid
+    private final ChangeProbe probe;
+
     public Source(
             @JsonProperty("mysql") final MysqlConfig mysql,
             @JsonProperty("query") final String query,
-            @JsonProperty("range-clause") final String rangeClause)
+            @JsonProperty("table") final String table,
+            @JsonProperty("read-mode") final ReadMode readMode,
+            @JsonProperty("range-clause") final String rangeClause,
+            @JsonProperty("update-column") final String updateColumn,
+            @JsonProperty("lookback") final Duration lookback,
+            @JsonProperty("chunking") final Chunking chunking,
+            @JsonProperty("batching") final Batching batching,
+            @JsonProperty("engine") final TransferEngine engine,
+            @JsonProperty("streaming") final Streaming streaming,
+            @JsonProperty("cdc") final Cdc cdc,
+            @JsonProperty("throttle") final Throttle throttle,
+            @JsonProperty("partitioning") final Partitioning partitioning,
+            @JsonProperty("resumable") final Boolean resumable,
+            @JsonProperty("probe") final ChangeProbe probe)
     {
         this.mysql = mysql;
         this.rangeClause = rangeClause;
-        this.query = query;
+        this.updateColumn = updateColumn;
+        this.lookback = lookback != null ? lookback : Duration.ZERO;
+        this.query = query != null || table == null ? query : "SELECT * FROM `" + table + "`";
+        this.table = table;
+        this.readMode = readMode != null ? readMode : ReadMode.VIEW;
+        this.chunking = chunking;
+        this.batching = batching;
+        this.engine = engine != null ? engine : TransferEngine.MYSQL_ENGINE;
+        this.streaming = streaming != null ? streaming : new Streaming(null, null);
+        this.cdc = cdc;
+        this.throttle = throttle;
+        this.partitioning = partitioning;
+        this.resumable = resumable != null && resumable;
+        this.probe = probe;
     }
 
     public String getQuery()
@@ -32,13 +95,113 @@ public class Source
         return query;
     }
 
+    /**
+     * @return The table to read directly instead of a query, or null
+     */
+    public String getTable()
+    {
+        return table;
+    }
+
+    /**
+     * @return How ClickHouse reads from MySQL with the MySQL engine
+     */
+    public ReadMode getReadMode()
+    {
+        return readMode;
+    }
+
     public String getRangeClause()
     {
         return rangeClause;
     }
 
+    /**
+     * @return The column holding the last modification time (or version) of a row, to transfer changed rows incrementally, or null
+     */
+    public String getUpdateColumn()
+    {
+        return updateColumn;
+    }
+
+    /**
+     * @return How far back from the last seen value of the update-column to read again, to catch rows committed out of order
+     */
+    public Duration getLookback()
+    {
+        return lookback;
+    }
+
+    /**
+     * @return Whether each transfer only reads the rows added or changed since the previous one
+     */
+    public boolean isIncremental()
+    {
+        return rangeClause != null || updateColumn != null;
+    }
+
     public MysqlConfig getMysql()
     {
         return mysql;
     }
+
+    public Chunking getChunking()
+    {
+        return chunking;
+    }
+
+    /**
+     * @return The settings for transferring a large incremental backlog in bounded batches, or null to transfer it at once
+     */
+    public Batching getBatching()
+    {
+        return batching;
+    }
+
+    public TransferEngine getEngine()
+    {
+        return engine;
+    }
+
+    public Streaming getStreaming()
+    {
+        return streaming;
+    }
+
+    public Cdc getCdc()
+    {
+        return cdc;
+    }
+
+    /**
+     * @return The limits on the load put on the source, or null to transfer at full speed
+     */
+    public Throttle getThrottle()
+    {
+        return throttle;
+    }
+
+    /**
+     * @return The settings for reloading only changed partitions of a table without range-clause, or null to reload all of it
+     */
+    public Partitioning getPartitioning()
+    {
+        return partitioning;
+    }
+
+    /**
+     * @return Whether to record the completed chunks of a transfer, so a failed or interrupted transfer continues where it stopped
+     */
+    public boolean isResumable()
+    {
+        return resumable;
+    }
+
+    /**
+     * @return The query telling whether the source may have changed since the last run, or null to always run
+     */
+    public ChangeProbe getProbe()
+    {
+        return probe;
+    }
 }
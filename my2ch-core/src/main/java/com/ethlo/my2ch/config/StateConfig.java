@@ -0,0 +1,52 @@
+package com.ethlo.my2ch.config;
+
+import java.nio.file.Path;
+
+import javax.validation.Valid;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+@Valid
+public class StateConfig
+{
+    private final StoreType store;
+    private final Path path;
+
+    public StateConfig(@JsonProperty("store") final StoreType store,
+                       @JsonProperty("path") final Path path)
+    {
+        this.store = store != null ? store : StoreType.CLICKHOUSE;
+        this.path = path;
+    }
+
+    public StoreType getStore()
+    {
+        return store;
+    }
+
+    /**
+     * @return The directory to keep state files in when using the file store
+     */
+    public Path getPath()
+    {
+        return path;
+    }
+
+    public enum StoreType
+    {
+        /**
+         * Kept for the lifetime of the process only, so each new process starts without watermarks
+         */
+        MEMORY,
+
+        /**
+         * Kept in the my2ch_state table in the target ClickHouse server. The default
+         */
+        CLICKHOUSE,
+
+        /**
+         * Kept in one properties file per alias in a local directory
+         */
+        FILE
+    }
+}
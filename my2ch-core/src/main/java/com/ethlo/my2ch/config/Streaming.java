@@ -0,0 +1,40 @@
+package com.ethlo.my2ch.config;
+
+import javax.validation.Valid;
+import javax.validation.constraints.Min;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+@Valid
+public class Streaming
+{
+    public static final int DEFAULT_BLOCK_ROWS = 65_536;
+
+    @Min(1)
+    private final int blockRows;
+
+    private final boolean compress;
+
+    public Streaming(@JsonProperty("block-rows") final Integer blockRows,
+                     @JsonProperty("compress") final Boolean compress)
+    {
+        this.blockRows = blockRows != null ? blockRows : DEFAULT_BLOCK_ROWS;
+        this.compress = compress == null || compress;
+    }
+
+    /**
+     * @return The number of rows sent to ClickHouse per insert
+     */
+    public int getBlockRows()
+    {
+        return blockRows;
+    }
+
+    /**
+     * @return Whether to gzip-compress the insert requests
+     */
+    public boolean isCompress()
+    {
+        return compress;
+    }
+}
@@ -1,5 +1,8 @@
 package com.ethlo.my2ch.config;
 
+import java.util.Collections;
+import java.util.Map;
+
 import javax.validation.Valid;
 import javax.validation.constraints.NotNull;
 
@@ -15,16 +18,30 @@ public class Target
     @NotNull
     private final String primaryKey;
 
-    @NotNull
     private final String engineDefinition;
 
+    @Valid
+    private final TypeOptimization typeOptimization;
+
+    @Valid
+    private final CodecSelection codecSelection;
+
+    @NotNull
+    private final Map<String, String> settings;
+
     public Target(@JsonProperty("clickhouse_config") final ClickHouseConfig clickhouse,
                   @JsonProperty("primary_key") final String primaryKey,
-                  @JsonProperty("engine_definition") final String engineDefinition)
+                  @JsonProperty("engine_definition") final String engineDefinition,
+                  @JsonProperty("type-optimization") final TypeOptimization typeOptimization,
+                  @JsonProperty("codec-selection") final CodecSelection codecSelection,
+                  @JsonProperty("settings") final Map<String, String> settings)
     {
         this.clickhouse = clickhouse;
         this.primaryKey = primaryKey;
         this.engineDefinition = engineDefinition;
+        this.typeOptimization = typeOptimization;
+        this.codecSelection = codecSelection;
+        this.settings = settings != null ? settings : Collections.emptyMap();
     }
 
     public String getPrimaryKey()
@@ -32,6 +49,9 @@ public class Target
         return primaryKey;
     }
 
+    /**
+     * @return The ENGINE clause of the table, or null to generate one when the source has an update-column
+     */
     public String getEngineDefinition()
     {
         return engineDefinition;
@@ -41,4 +61,29 @@ public class Target
     {
         return clickhouse;
     }
+
+    /**
+     * @return The settings for choosing column types from a sample of the data, or null to map the MySQL types directly
+     */
+    public TypeOptimization getTypeOptimization()
+    {
+        return typeOptimization;
+    }
+
+    /**
+     * @return The settings for choosing column codecs by compressing a sample of the data, or null to use the server default
+     */
+    public CodecSelection getCodecSelection()
+    {
+        return codecSelection;
+    }
+
+    /**
+     * @return The ClickHouse settings for the inserts and DDL of this alias, by name. Settings of the MySQL database engine, like
+     * <code>connection_pool_size</code>, are applied when creating the database instead
+     */
+    public Map<String, String> getSettings()
+    {
+        return settings;
+    }
 }
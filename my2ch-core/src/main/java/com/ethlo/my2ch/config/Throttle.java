@@ -0,0 +1,123 @@
+package com.ethlo.my2ch.config;
+
+import java.time.Duration;
+
+import javax.validation.Valid;
+import javax.validation.constraints.Min;
+import javax.validation.constraints.NotNull;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * Limits the load a transfer puts on the MySQL source, based on the health of the server
+ */
+@Valid
+public class Throttle
+{
+    @Min(1)
+    private final int maxThreadsRunning;
+
+    @NotNull
+    private final Duration maxReplicationLag;
+
+    @NotNull
+    private final Duration maxProbeLatency;
+
+    @NotNull
+    private final String probeQuery;
+
+    @NotNull
+    private final Duration checkInterval;
+
+    @NotNull
+    private final Duration maxPause;
+
+    @Min(1)
+    private final Integer hostConcurrency;
+
+    @Min(1)
+    private final Long maxRowsPerSecond;
+
+    public Throttle(@JsonProperty("max-threads-running") final Integer maxThreadsRunning,
+                    @JsonProperty("max-replication-lag") final Duration maxReplicationLag,
+                    @JsonProperty("max-probe-latency") final Duration maxProbeLatency,
+                    @JsonProperty("probe-query") final String probeQuery,
+                    @JsonProperty("check-interval") final Duration checkInterval,
+                    @JsonProperty("max-pause") final Duration maxPause,
+                    @JsonProperty("host-concurrency") final Integer hostConcurrency,
+                    @JsonProperty("max-rows-per-second") final Long maxRowsPerSecond)
+    {
+        this.maxThreadsRunning = maxThreadsRunning != null ? maxThreadsRunning : 50;
+        this.maxReplicationLag = maxReplicationLag != null ? maxReplicationLag : Duration.ofSeconds(30);
+        this.maxProbeLatency = maxProbeLatency != null ? maxProbeLatency : Duration.ofMillis(500);
+        this.probeQuery = probeQuery != null ? probeQuery : "SELECT 1";
+        this.checkInterval = checkInterval != null ? checkInterval : Duration.ofSeconds(5);
+        this.maxPause = maxPause != null ? maxPause : Duration.ofMinutes(30);
+        this.hostConcurrency = hostConcurrency;
+        this.maxRowsPerSecond = maxRowsPerSecond;
+    }
+
+    /**
+     * @return The number of running threads (<code>Threads_running</code>) at which the source counts as overloaded
+     */
+    public int getMaxThreadsRunning()
+    {
+        return maxThreadsRunning;
+    }
+
+    /**
+     * @return The replication lag at which the source counts as overloaded. Only checked if the source is a replica
+     */
+    public Duration getMaxReplicationLag()
+    {
+        return maxReplicationLag;
+    }
+
+    /**
+     * @return The latency of the probe query at which the source counts as overloaded
+     */
+    public Duration getMaxProbeLatency()
+    {
+        return maxProbeLatency;
+    }
+
+    /**
+     * @return The query to time as a measure of how responsive the source is
+     */
+    public String getProbeQuery()
+    {
+        return probeQuery;
+    }
+
+    /**
+     * @return How often to sample the health of the source
+     */
+    public Duration getCheckInterval()
+    {
+        return checkInterval;
+    }
+
+    /**
+     * @return How long to wait for an overloaded source to recover before failing the transfer
+     */
+    public Duration getMaxPause()
+    {
+        return maxPause;
+    }
+
+    /**
+     * @return The maximum number of chunks transferred at the same time from the MySQL host, across all aliases, or null for no limit
+     */
+    public Integer getHostConcurrency()
+    {
+        return hostConcurrency;
+    }
+
+    /**
+     * @return The maximum average number of rows per second to read for this alias, or null for no limit
+     */
+    public Long getMaxRowsPerSecond()
+    {
+        return maxRowsPerSecond;
+    }
+}
@@ -41,15 +41,30 @@ public class TransferConfig
     @NotNull
     private final Target target;
 
+    @Valid
+    private final StateConfig state;
+
+    @Valid
+    private final Reconcile reconcile;
+
+    @Valid
+    private final DeleteSync deleteSync;
+
     public TransferConfig(@JsonProperty("alias") final String alias,
                           @JsonProperty("schedule") final Schedule schedule,
                           @JsonProperty("source") final Source source,
-                          @JsonProperty("target") final Target target)
+                          @JsonProperty("target") final Target target,
+                          @JsonProperty("state") final StateConfig state,
+                          @JsonProperty("reconcile") final Reconcile reconcile,
+                          @JsonProperty("delete-sync") final DeleteSync deleteSync)
     {
         this.alias = alias;
         this.schedule = schedule;
         this.source = source;
         this.target = target;
+        this.state = state != null ? state : new StateConfig(null, null);
+        this.reconcile = reconcile != null ? reconcile : new Reconcile(null, null, null, null, null, null, null);
+        this.deleteSync = deleteSync;
     }
 
     public String getAlias()
@@ -72,5 +87,20 @@ public class TransferConfig
         return target;
     }
 
+    public StateConfig getState()
+    {
+        return state;
+    }
+
+    public Reconcile getReconcile()
+    {
+        return reconcile;
+    }
+
+    public DeleteSync getDeleteSync()
+    {
+        return deleteSync;
+    }
+
 }
 
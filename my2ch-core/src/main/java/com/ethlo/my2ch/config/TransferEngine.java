@@ -0,0 +1,14 @@
+package com.ethlo.my2ch.config;
+
+public enum TransferEngine
+{
+    /**
+     * ClickHouse pulls the data through a database with the MySQL engine
+     */
+    MYSQL_ENGINE,
+
+    /**
+     * my2ch streams the rows from MySQL over JDBC and pushes them to ClickHouse as RowBinary over HTTP
+     */
+    STREAMING
+}
@@ -0,0 +1,42 @@
+package com.ethlo.my2ch.config;
+
+import javax.validation.Valid;
+import javax.validation.constraints.Min;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+@Valid
+public class TypeOptimization
+{
+    public static final int DEFAULT_SAMPLE_ROWS = 100_000;
+    public static final int DEFAULT_LOW_CARDINALITY_LIMIT = 10_000;
+
+    @Min(1)
+    private final int sampleRows;
+
+    @Min(0)
+    private final int lowCardinalityLimit;
+
+    public TypeOptimization(@JsonProperty("sample-rows") final Integer sampleRows,
+                            @JsonProperty("low-cardinality-limit") final Integer lowCardinalityLimit)
+    {
+        this.sampleRows = sampleRows != null ? sampleRows : DEFAULT_SAMPLE_ROWS;
+        this.lowCardinalityLimit = lowCardinalityLimit != null ? lowCardinalityLimit : DEFAULT_LOW_CARDINALITY_LIMIT;
+    }
+
+    /**
+     * @return The number of rows of the source query to look at
+     */
+    public int getSampleRows()
+    {
+        return sampleRows;
+    }
+
+    /**
+     * @return The highest number of distinct values in the sample for a string column to become <code>LowCardinality(String)</code>
+     */
+    public int getLowCardinalityLimit()
+    {
+        return lowCardinalityLimit;
+    }
+}
@@ -0,0 +1,62 @@
+package com.ethlo.my2ch.state;
+
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+
+import com.ethlo.clackshack.ClackShack;
+import com.ethlo.clackshack.model.ResultSet;
+import com.ethlo.clackshack.model.Row;
+
+public class ClickHouseStateStore implements StateStore
+{
+    private final ClackShack clackShack;
+
+    public ClickHouseStateStore(final ClackShack clackShack)
+    {
+        this.clackShack = clackShack;
+        clackShack.ddl("CREATE TABLE IF NOT EXISTS my2ch_state (alias String, key String, value String, deleted UInt8, timestamp DateTime64(3)) " +
+                "ENGINE = ReplacingMergeTree(timestamp) " +
+                "ORDER BY (alias, key)");
+    }
+
+    @Override
+    public Optional<String> get(final String alias, final String key)
+    {
+        final Map<String, Object> params = new LinkedHashMap<>();
+        params.put("alias", alias);
+        params.put("key", key);
+        final ResultSet result = clackShack.query("SELECT value, deleted FROM my2ch_state FINAL WHERE alias = :alias AND key = :key", params);
+        if (result.isEmpty())
+        {
+            return Optional.empty();
+        }
+        final Row row = result.getRow(0);
+        return "1".equals(row.get("deleted").toString()) ? Optional.empty() : Optional.of(row.get("value").toString());
+    }
+
+    @Override
+    public void put(final String alias, final String key, final String value)
+    {
+        write(alias, key, value, false);
+    }
+
+    @Override
+    public void remove(final String alias, final String key)
+    {
+        write(alias, key, "", true);
+    }
+
+    private void write(final String alias, final String key, final String value, final boolean deleted)
+    {
+        final Map<String, Object> params = new LinkedHashMap<>();
+        params.put("alias", alias);
+        params.put("key", key);
+        params.put("value", value);
+        params.put("deleted", deleted ? 1 : 0);
+        params.put("timestamp", LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss.SSS")));
+        clackShack.insert("INSERT INTO my2ch_state VALUES (:alias, :key, :value, :deleted, :timestamp)", params);
+    }
+}
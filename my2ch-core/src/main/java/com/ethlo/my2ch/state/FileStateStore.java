@@ -0,0 +1,90 @@
+package com.ethlo.my2ch.state;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Optional;
+import java.util.Properties;
+
+public class FileStateStore implements StateStore
+{
+    private final Path directory;
+
+    public FileStateStore(final Path directory)
+    {
+        this.directory = directory;
+        try
+        {
+            Files.createDirectories(directory);
+        }
+        catch (IOException exc)
+        {
+            throw new UncheckedIOException(exc);
+        }
+    }
+
+    @Override
+    public synchronized Optional<String> get(final String alias, final String key)
+    {
+        return Optional.ofNullable(load(alias).getProperty(key));
+    }
+
+    @Override
+    public synchronized void put(final String alias, final String key, final String value)
+    {
+        final Properties properties = load(alias);
+        properties.setProperty(key, value);
+        save(alias, properties);
+    }
+
+    @Override
+    public synchronized void remove(final String alias, final String key)
+    {
+        final Properties properties = load(alias);
+        if (properties.remove(key) != null)
+        {
+            save(alias, properties);
+        }
+    }
+
+    private Properties load(final String alias)
+    {
+        final Properties properties = new Properties();
+        final Path file = directory.resolve(alias + ".properties");
+        if (Files.exists(file))
+        {
+            try (final Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8))
+            {
+                properties.load(reader);
+            }
+            catch (IOException exc)
+            {
+                throw new UncheckedIOException(exc);
+            }
+        }
+        return properties;
+    }
+
+    private void save(final String alias, final Properties properties)
+    {
+        final Path file = directory.resolve(alias + ".properties");
+        final Path tmp = directory.resolve(alias + ".properties.tmp");
+        try
+        {
+            try (final Writer writer = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8))
+            {
+                properties.store(writer, "my2ch state for " + alias);
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        catch (IOException exc)
+        {
+            throw new UncheckedIOException(exc);
+        }
+    }
+}
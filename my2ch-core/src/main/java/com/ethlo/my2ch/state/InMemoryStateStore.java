@@ -0,0 +1,38 @@
+package com.ethlo.my2ch.state;
+
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+public class InMemoryStateStore implements StateStore
+{
+    private static final InMemoryStateStore INSTANCE = new InMemoryStateStore();
+
+    private final Map<String, String> values = new ConcurrentHashMap<>();
+
+    /**
+     * @return The store shared by all aliases in this process
+     */
+    public static InMemoryStateStore getInstance()
+    {
+        return INSTANCE;
+    }
+
+    @Override
+    public Optional<String> get(final String alias, final String key)
+    {
+        return Optional.ofNullable(values.get(alias + "/" + key));
+    }
+
+    @Override
+    public void put(final String alias, final String key, final String value)
+    {
+        values.put(alias + "/" + key, value);
+    }
+
+    @Override
+    public void remove(final String alias, final String key)
+    {
+        values.remove(alias + "/" + key);
+    }
+}
@@ -0,0 +1,15 @@
+package com.ethlo.my2ch.state;
+
+import java.util.Optional;
+
+/**
+ * Small key-value store for the bookkeeping of each alias, like the high-water mark of the last successful transfer
+ */
+public interface StateStore
+{
+    Optional<String> get(String alias, String key);
+
+    void put(String alias, String key, String value);
+
+    void remove(String alias, String key);
+}
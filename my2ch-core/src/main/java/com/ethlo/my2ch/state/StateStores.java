@@ -0,0 +1,28 @@
+package com.ethlo.my2ch.state;
+
+import org.springframework.util.Assert;
+
+import com.ethlo.clackshack.ClackShack;
+import com.ethlo.my2ch.config.StateConfig;
+
+public class StateStores
+{
+    private StateStores()
+    {
+
+    }
+
+    public static StateStore create(final StateConfig config, final ClackShack clackShack)
+    {
+        switch (config.getStore())
+        {
+            case CLICKHOUSE:
+                return new ClickHouseStateStore(clackShack);
+            case FILE:
+                Assert.notNull(config.getPath(), "state.path is required for the file state store");
+                return new FileStateStore(config.getPath());
+            default:
+                return InMemoryStateStore.getInstance();
+        }
+    }
+}
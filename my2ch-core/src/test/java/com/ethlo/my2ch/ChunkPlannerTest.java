@@ -0,0 +1,40 @@
+package com.ethlo.my2ch;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+class ChunkPlannerTest
+{
+    @Test
+    void testSplitEvenly()
+    {
+        final List<KeyRange> ranges = ChunkPlanner.split(1, 100, 4);
+        assertThat(ranges).hasSize(4);
+        assertThat(ranges.get(0).getFrom()).isEqualTo(1);
+        assertThat(ranges.get(3).getTo()).isEqualTo(101);
+        assertThat(ranges).allMatch(r -> r.size() == 25);
+    }
+
+    @Test
+    void testSplitWithRemainderIsContiguous()
+    {
+        final List<KeyRange> ranges = ChunkPlanner.split(-5, 5, 3);
+        assertThat(ranges).hasSize(3);
+        for (int i = 1; i < ranges.size(); i++)
+        {
+            assertThat(ranges.get(i).getFrom()).isEqualTo(ranges.get(i - 1).getTo());
+        }
+        assertThat(ranges.stream().mapToLong(KeyRange::size).sum()).isEqualTo(11);
+    }
+
+    @Test
+    void testFewerKeysThanChunks()
+    {
+        final List<KeyRange> ranges = ChunkPlanner.split(7, 8, 10);
+        assertThat(ranges).hasSize(2);
+        assertThat(ranges.get(0).toPredicate("id")).isEqualTo("id >= 7 AND id < 8");
+    }
+}
@@ -0,0 +1,68 @@
+package com.ethlo.my2ch;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+class ClickHouseSettingsTest
+{
+    private final ClickHouseSettings settings = new ClickHouseSettings(settings());
+
+    @Test
+    void testEngineSettingsAreSeparated()
+    {
+        assertThat(settings.getQuery()).containsOnlyKeys("max_insert_threads", "load_balancing", "log_comment");
+        assertThat(settings.engineClause()).isEqualTo("SETTINGS connection_pool_size = 32 ");
+    }
+
+    @Test
+    void testClauseQuotesStrings()
+    {
+        assertThat(settings.clause(Collections.emptyMap()))
+                .isEqualTo("SETTINGS max_insert_threads = 4, load_balancing = 'random', log_comment = 'it\\'s a\\\\b' ");
+    }
+
+    @Test
+    void testStatementSettingsOverride()
+    {
+        assertThat(settings.clause(Collections.singletonMap("max_insert_threads", "1")))
+                .startsWith("SETTINGS max_insert_threads = 1, ");
+    }
+
+    @Test
+    void testStatementSettingsAreAppended()
+    {
+        assertThat(settings.clause(Collections.singletonMap("insert_deduplication_token", "alias-1a2b-0")))
+                .endsWith(", insert_deduplication_token = 'alias-1a2b-0' ");
+    }
+
+    @Test
+    void testNumbersAreNotQuoted()
+    {
+        final ClickHouseSettings numbers = new ClickHouseSettings(Map.of("max_execution_time", "-1"));
+        assertThat(numbers.clause(Collections.singletonMap("insert_null_as_default", "0"))).isEqualTo("SETTINGS max_execution_time = -1, insert_null_as_default = 0 ");
+        assertThat(new ClickHouseSettings(Map.of("max_bytes_ratio", "0.5")).clause(Collections.emptyMap())).isEqualTo("SETTINGS max_bytes_ratio = 0.5 ");
+    }
+
+    @Test
+    void testNoSettings()
+    {
+        final ClickHouseSettings empty = new ClickHouseSettings(Collections.emptyMap());
+        assertThat(empty.clause(Collections.emptyMap())).isEmpty();
+        assertThat(empty.engineClause()).isEmpty();
+    }
+
+    private static Map<String, String> settings()
+    {
+        final Map<String, String> settings = new LinkedHashMap<>();
+        settings.put("max_insert_threads", "4");
+        settings.put("connection_pool_size", "32");
+        settings.put("load_balancing", "random");
+        settings.put("log_comment", "it's a\\b");
+        return settings;
+    }
+}
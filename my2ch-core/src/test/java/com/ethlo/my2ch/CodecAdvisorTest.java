@@ -0,0 +1,49 @@
+package com.ethlo.my2ch;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+
+class CodecAdvisorTest
+{
+    @Test
+    void testDefaultCodecFirst()
+    {
+        assertThat(CodecAdvisor.getCandidates("String")).startsWith("LZ4");
+        assertThat(CodecAdvisor.getCandidates("Int64")).startsWith("LZ4");
+    }
+
+    @Test
+    void testIntegerCandidates()
+    {
+        assertThat(CodecAdvisor.getCandidates("UInt32")).contains("Delta, LZ4", "DoubleDelta", "T64, LZ4", "T64, ZSTD(1)");
+        assertThat(CodecAdvisor.getCandidates("DateTime('UTC')")).contains("T64, LZ4");
+    }
+
+    @Test
+    void testNoT64ForDateTime64()
+    {
+        assertThat(CodecAdvisor.getCandidates("DateTime64(3)"))
+                .contains("Delta, LZ4", "DoubleDelta")
+                .noneMatch(codec -> codec.startsWith("T64"));
+    }
+
+    @Test
+    void testFloatCandidates()
+    {
+        assertThat(CodecAdvisor.getCandidates("Float64"))
+                .contains("Gorilla", "Gorilla, ZSTD(1)")
+                .noneMatch(codec -> codec.startsWith("T64") || codec.startsWith("Delta"));
+    }
+
+    @Test
+    void testWrappedTypesGetGeneralCodecsOnly()
+    {
+        for (final String type : Arrays.asList("Nullable(Int32)", "LowCardinality(String)", "LowCardinality(Nullable(String))", "Decimal(10,2)", "Enum8('a' = 1)"))
+        {
+            assertThat(CodecAdvisor.getCandidates(type)).as(type).containsExactly("LZ4", "ZSTD(1)", "ZSTD(3)", "ZSTD(9)");
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package com.ethlo.my2ch;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.StringJoiner;
+
+import org.junit.jupiter.api.Test;
+
+class ColumnTypeOptimizerTest
+{
+    @Test
+    void testIntegerWidthsAndSignedness()
+    {
+        assertThat(ColumnTypeOptimizer.baseType("tinyint(3) unsigned")).isEqualTo("UInt8");
+        assertThat(ColumnTypeOptimizer.baseType("tinyint(4)")).isEqualTo("Int8");
+        assertThat(ColumnTypeOptimizer.baseType("smallint unsigned")).isEqualTo("UInt16");
+        assertThat(ColumnTypeOptimizer.baseType("mediumint(8) unsigned")).isEqualTo("UInt32");
+        assertThat(ColumnTypeOptimizer.baseType("int(11)")).isEqualTo("Int32");
+        assertThat(ColumnTypeOptimizer.baseType("BIGINT(20) UNSIGNED")).isEqualTo("UInt64");
+    }
+
+    @Test
+    void testDateTimePrecision()
+    {
+        assertThat(ColumnTypeOptimizer.baseType("datetime")).isEqualTo("DateTime");
+        assertThat(ColumnTypeOptimizer.baseType("datetime(3)")).isEqualTo("DateTime64(3)");
+        assertThat(ColumnTypeOptimizer.baseType("timestamp(6)")).isEqualTo("DateTime64(6)");
+        assertThat(ColumnTypeOptimizer.baseType("datetime(0)")).isEqualTo("DateTime");
+    }
+
+    @Test
+    void testEnum()
+    {
+        assertThat(ColumnTypeOptimizer.baseType("enum('a','b')")).isEqualTo("Enum8('' = 0, 'a' = 1, 'b' = 2)");
+    }
+
+    @Test
+    void testEnumWithEmptyValue()
+    {
+        assertThat(ColumnTypeOptimizer.enumType("enum('','x')")).isEqualTo("Enum8('' = 1, 'x' = 2)");
+    }
+
+    @Test
+    void testEnumQuoting()
+    {
+        assertThat(ColumnTypeOptimizer.enumType("enum('it''s','a\\b')")).isEqualTo("Enum8('' = 0, 'it\\'s' = 1, 'a\\\\b' = 2)");
+    }
+
+    @Test
+    void testEnum8Boundary()
+    {
+        assertThat(ColumnTypeOptimizer.enumType(enumOf(127))).startsWith("Enum8(").endsWith("'v127' = 127)");
+        assertThat(ColumnTypeOptimizer.enumType(enumOf(128))).startsWith("Enum16(").endsWith("'v128' = 128)");
+    }
+
+    private static String enumOf(final int values)
+    {
+        final StringJoiner type = new StringJoiner(",", "enum(", ")");
+        for (int i = 1; i <= values; i++)
+        {
+            type.add("'v" + i + "'");
+        }
+        return type.toString();
+    }
+}
@@ -0,0 +1,43 @@
+package com.ethlo.my2ch;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+class KeysetCursorTest
+{
+    private final List<String> columns = Arrays.asList("updated_at", "id");
+    private final KeysetCursor cursor = new KeysetCursor("2022-01-01 10:00:00", Arrays.asList("'2022-01-01 10:00:00'", "42"));
+
+    @Test
+    void testAfterCompositeKey()
+    {
+        assertThat(cursor.after(columns)).isEqualTo("((updated_at > '2022-01-01 10:00:00') OR (updated_at = '2022-01-01 10:00:00' AND id > 42))");
+    }
+
+    @Test
+    void testUpToCompositeKey()
+    {
+        assertThat(cursor.upTo(columns)).isEqualTo("((updated_at < '2022-01-01 10:00:00') OR (updated_at = '2022-01-01 10:00:00' AND id <= 42))");
+    }
+
+    @Test
+    void testSingleColumn()
+    {
+        final KeysetCursor single = new KeysetCursor("42", Collections.singletonList("42"));
+        assertThat(single.after(Collections.singletonList("id"))).isEqualTo("(id > 42)");
+        assertThat(single.upTo(Collections.singletonList("id"))).isEqualTo("(id <= 42)");
+    }
+
+    @Test
+    void testJsonRoundTrip()
+    {
+        final KeysetCursor parsed = KeysetCursor.parse(cursor.toJson()).orElseThrow();
+        assertThat(parsed.getWatermark()).isEqualTo("2022-01-01 10:00:00");
+        assertThat(parsed.after(columns)).isEqualTo(cursor.after(columns));
+    }
+}
@@ -12,4 +12,19 @@ class My2chTest
         final String type = ClickHouseTypeDefinitionConverter.fromMysqlType("decimal (3, 6 )");
         assertThat(type).isEqualTo("Decimal(3,6)");
     }
-}
\ No newline at end of file
+
+    @Test
+    void testAddPredicateKeepsRangeClauseApart()
+    {
+        final String select = "SELECT * FROM `where_used`";
+        assertThat(My2ch.addPredicate(select + " where a > 1 OR b IS NULL", select.length(), "id < 10"))
+                .isEqualTo(select + " where (a > 1 OR b IS NULL) AND (id < 10)");
+    }
+
+    @Test
+    void testAddPredicateWithoutWhere()
+    {
+        final String select = "SELECT * FROM `where_used`";
+        assertThat(My2ch.addPredicate(select, select.length(), "id < 10")).isEqualTo(select + " WHERE id < 10");
+    }
+}
@@ -0,0 +1,80 @@
+package com.ethlo.my2ch;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatCode;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.math.BigDecimal;
+import java.sql.Date;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+import org.junit.jupiter.api.Test;
+
+class PartitionSyncTest
+{
+    @Test
+    void testTimestampKeyWithoutFraction()
+    {
+        assertThat(PartitionSync.key(Timestamp.valueOf("2024-01-01 00:00:00"))).isEqualTo("2024-01-01 00:00:00");
+    }
+
+    @Test
+    void testDateTimeKeyWithFraction()
+    {
+        assertThat(PartitionSync.key(LocalDateTime.of(2024, 1, 1, 12, 30, 0, 500_000_000))).isEqualTo("2024-01-01 12:30:00.5");
+    }
+
+    @Test
+    void testDateKey()
+    {
+        assertThat(PartitionSync.key(Date.valueOf("2024-02-29"))).isEqualTo("2024-02-29");
+        assertThat(PartitionSync.key(LocalDate.of(2024, 2, 29))).isEqualTo("2024-02-29");
+    }
+
+    @Test
+    void testDecimalKey()
+    {
+        assertThat(PartitionSync.key(new BigDecimal("202401.00"))).isEqualTo("202401");
+        assertThat(PartitionSync.key(new BigDecimal("0.000"))).isEqualTo("0");
+    }
+
+    @Test
+    void testNumberAndNullKey()
+    {
+        assertThat(PartitionSync.key(202401L)).isEqualTo("202401");
+        assertThat(PartitionSync.key(null)).isEqualTo("null");
+    }
+
+    @Test
+    void testPartitionKeyMatches()
+    {
+        assertThatCode(() -> PartitionSync.checkPartitionKey("toYYYYMM( created )", "toYYYYMM(created)", "db.t")).doesNotThrowAnyException();
+        assertThatCode(() -> PartitionSync.checkPartitionKey("toDate(`created`)", "toDate(created)", "db.t")).doesNotThrowAnyException();
+    }
+
+    @Test
+    void testPartitionKeyCoarserThanExpression()
+    {
+        assertThatThrownBy(() -> PartitionSync.checkPartitionKey("toDate(created)", "toYYYYMM(created)", "db.t"))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessageContaining("partitioned by 'toYYYYMM(created)'");
+    }
+
+    @Test
+    void testTableNotPartitioned()
+    {
+        assertThatThrownBy(() -> PartitionSync.checkPartitionKey("toYYYYMM(created)", "", "db.t"))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessageContaining("not partitioned");
+    }
+
+    @Test
+    void testTableMissing()
+    {
+        assertThatThrownBy(() -> PartitionSync.checkPartitionKey("toYYYYMM(created)", null, "db.t"))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessageContaining("does not exist");
+    }
+}
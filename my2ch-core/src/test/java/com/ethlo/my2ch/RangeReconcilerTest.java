@@ -0,0 +1,28 @@
+package com.ethlo.my2ch;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.jupiter.api.Test;
+
+class RangeReconcilerTest
+{
+    @Test
+    void testPassEndsAtFewerRowsSide()
+    {
+        assertThat(RangeReconciler.passEnd(100, 1_000_000, 5_000L, 4_000L)).isEqualTo(4_000);
+        assertThat(RangeReconciler.passEnd(100, 1_000_000, 3_000L, 4_000L)).isEqualTo(3_000);
+    }
+
+    @Test
+    void testPassEndsAtMaxWhenFewRowsRemain()
+    {
+        assertThat(RangeReconciler.passEnd(100, 2_000, null, null)).isEqualTo(2_001);
+        assertThat(RangeReconciler.passEnd(100, 2_000, null, 1_500L)).isEqualTo(1_500);
+    }
+
+    @Test
+    void testPassCoversStartKey()
+    {
+        assertThat(RangeReconciler.passEnd(100, 2_000, 100L, 100L)).isEqualTo(101);
+    }
+}
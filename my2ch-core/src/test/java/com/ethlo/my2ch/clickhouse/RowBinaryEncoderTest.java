@@ -0,0 +1,70 @@
+package com.ethlo.my2ch.clickhouse;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.jupiter.api.Test;
+
+class RowBinaryEncoderTest
+{
+    @Test
+    void testEncodePrimitives()
+    {
+        final RowBinaryEncoder encoder = new RowBinaryEncoder(Arrays.asList("Int32", "Nullable(String)", "Date", "Decimal(10,2)"), ZoneOffset.UTC);
+        final RowBinaryBuffer buffer = new RowBinaryBuffer(16);
+        encoder.encode(new Object[]{258, "ab", LocalDate.ofEpochDay(3), new BigDecimal("1.5")}, buffer);
+
+        assertThat(Arrays.copyOf(buffer.array(), buffer.size())).containsExactly(
+                2, 1, 0, 0,             // Int32 258
+                0, 2, 'a', 'b',         // Nullable flag, varint length, bytes
+                3, 0,                   // Date as days since epoch
+                (byte) 150, 0, 0, 0, 0, 0, 0, 0 // Decimal64 unscaled 150
+        );
+    }
+
+    @Test
+    void testEncodeNullAndEnum()
+    {
+        final RowBinaryEncoder encoder = new RowBinaryEncoder(Arrays.asList("Nullable(Int64)", "Enum8('a' = 1, 'b' = 2)"), ZoneOffset.UTC);
+        final RowBinaryBuffer buffer = new RowBinaryBuffer(1);
+        encoder.encode(new Object[]{null, "b"}, buffer);
+        assertThat(Arrays.copyOf(buffer.array(), buffer.size())).containsExactly(1, 2);
+    }
+
+    @Test
+    void testDateTimeInColumnOrServerZone()
+    {
+        final RowBinaryEncoder encoder = new RowBinaryEncoder(Arrays.asList("DateTime('UTC')", "DateTime", "Nullable(DateTime64(3, 'UTC'))"), ZoneOffset.ofHours(1));
+        final RowBinaryBuffer buffer = new RowBinaryBuffer(32);
+        final LocalDateTime oneAm = LocalDateTime.of(1970, 1, 1, 1, 0, 0);
+        encoder.encode(new Object[]{oneAm, oneAm, oneAm}, buffer);
+        assertThat(Arrays.copyOf(buffer.array(), buffer.size())).containsExactly(
+                0x10, 0x0E, 0, 0,                                   // 3600 seconds, as the column is in UTC
+                0, 0, 0, 0,                                         // Epoch, as the server is at UTC+1
+                0, (byte) 0x80, (byte) 0xEE, 0x36, 0, 0, 0, 0, 0    // Not null, 3 600 000 milliseconds
+        );
+    }
+
+    @Test
+    void testNullInNonNullableColumn()
+    {
+        final RowBinaryEncoder encoder = new RowBinaryEncoder(Collections.singletonList("Int64"), ZoneOffset.UTC);
+        assertThatThrownBy(() -> encoder.encode(new Object[]{null}, new RowBinaryBuffer(1)))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("Int64");
+    }
+
+    @Test
+    void testUnsupportedType()
+    {
+        assertThatThrownBy(() -> new RowBinaryEncoder(Collections.singletonList("Array(String)"), ZoneOffset.UTC))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+}